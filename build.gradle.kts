@@ -21,6 +21,45 @@ tasks.compileTestJava {
     options.release.set(17)
 }
 
+// Classes for Java 17+, packaged into META-INF/versions/17 of the multi-release jar
+val java17SourceSet = sourceSets.create("java17") {
+    java.srcDir("src/main/java17")
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>(java17SourceSet.compileJavaTaskName) {
+    options.release.set(17)
+    options.encoding = "UTF-8"
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+// Classes for Java 21+, packaged into META-INF/versions/21 of the multi-release jar.
+// They are compiled by a JDK 21 toolchain unless Gradle itself runs on Java 21+,
+// so every jar supports --virtual-threads whatever JDK runs the build
+val java21SourceSet = sourceSets.create("java21") {
+    java.srcDir("src/main/java21")
+    compileClasspath += sourceSets.main.get().output
+}
+
+tasks.named<JavaCompile>(java21SourceSet.compileJavaTaskName) {
+    if (!JavaVersion.current().isCompatibleWith(JavaVersion.VERSION_21)) {
+        javaCompiler.set(javaToolchains.compilerFor {
+            languageVersion.set(JavaLanguageVersion.of(21))
+        })
+    }
+    options.release.set(21)
+    options.encoding = "UTF-8"
+}
+
+tasks.jar {
+    into("META-INF/versions/17") {
+        from(java17SourceSet.output)
+    }
+    into("META-INF/versions/21") {
+        from(java21SourceSet.output)
+    }
+}
+
 val buildDir = layout.buildDirectory.asFile.get()
 
 val versionFile = buildDir.resolve("version.txt")
@@ -68,7 +107,7 @@ tasks.withType(org.gradle.jvm.tasks.Jar::class) {
             "Main-Class" to mainName,
             "Implementation-URL" to "https://github.com/Glavo/gchecksum",
             "Implementation-Vendor" to "Glavo",
-            // "Multi-Release" to "true"
+            "Multi-Release" to "true"
         )
     )
 }
@@ -99,10 +138,50 @@ dependencies {
 tasks.test {
     dependsOn(generateSampleFiles)
 
+    classpath = java17SourceSet.output + classpath
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+
     useJUnitPlatform()
     testLogging.showStandardStreams = true
 }
 
+//region jmh
+
+val jmhSourceSet = sourceSets.create("jmh") {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+dependencies {
+    "jmhImplementation"(Deps.jmh("jmh-core"))
+    "jmhAnnotationProcessor"(Deps.jmh("jmh-generator-annprocess"))
+}
+
+tasks.named<JavaCompile>(jmhSourceSet.compileJavaTaskName) {
+    options.release.set(17)
+    options.encoding = "UTF-8"
+}
+
+val jmh by tasks.registering(JavaExec::class) {
+    group = "benchmark"
+
+    val resultFile = buildDir.resolve("reports/jmh/results.json")
+
+    classpath = jmhSourceSet.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    doFirst {
+        resultFile.parentFile.mkdirs()
+    }
+
+    args("-rf", "json", "-rff", resultFile.absolutePath)
+    project.properties["jmh.args"]?.let { jmhArgs ->
+        args(jmhArgs.toString().split(' ').filter { it.isNotBlank() })
+    }
+}
+
+//endregion
+
 //region native-image
 
 val graalHome: String
@@ -35,4 +35,7 @@ object Deps {
 
     val junitVersion = "5.10.1"
     fun junit(name: String) = "org.junit.jupiter:$name:$junitVersion"
+
+    val jmhVersion = "1.37"
+    fun jmh(name: String) = "org.openjdk.jmh:$name:$jmhVersion"
 }
\ No newline at end of file
@@ -1 +1,6 @@
+plugins {
+    // Downloads the JDK 21 toolchain of the java21 source set when no local one is found
+    id("org.gradle.toolchains.foojay-resolver-convention") version "0.8.0"
+}
+
 rootProject.name = "gchecksum"
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.ByteBufferChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of hashing a single file of {@code size} bytes.
+ * <p>
+ * Scores are reported in ops/s (one op is one file), and the secondary result {@code bytes} is the throughput
+ * in bytes/s, so algorithms can be compared across file sizes.
+ * <p>
+ * The sizes follow the sample files generated by {@code SampleFileGenerator}:
+ * small files, sizes around multiples of a quarter of {@code IOUtils.DEFAULT_BUFFER_SIZE} (320 KiB),
+ * and a large file that goes through many buffer refills.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HasherBenchmark {
+
+    /**
+     * Counts the hashed bytes, JMH reports it normalized by time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Param({"MD5", "SHA-1", "SHA-256", "SHA-512", "BLAKE3", "CRC32", "CRC32C", "Adler32", "XXH64", "XXH3", "XXH128"})
+    public String algorithm;
+
+    @Param({
+            // small
+            "0", "1", "64", "1024", "4096",
+            // DEFAULT_BUFFER_SIZE / 4 * n
+            "81919", "81920", "81921",
+            "327615", "327679", "327680", "327681", "327745",
+            "655360",
+            // large
+            "67108864"
+    })
+    public int size;
+
+    private Hasher hasher;
+    private byte[] data;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        hasher = Hasher.ofName(algorithm);
+        if (hasher == null) {
+            throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+        }
+
+        data = new byte[size];
+        new Random(0).nextBytes(data);
+
+        file = Files.createTempFile("gchecksum-benchmark-", ".bin");
+        Files.write(file, data);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String hashChannel(Bytes counter) throws IOException {
+        counter.bytes += size;
+        return hasher.hash(new ByteBufferChannel(data));
+    }
+
+    @Benchmark
+    public String hashFile(Bytes counter) throws IOException {
+        counter.bytes += size;
+        return hasher.hashFile(file);
+    }
+}
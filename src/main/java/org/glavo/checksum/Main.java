@@ -18,6 +18,7 @@ package org.glavo.checksum;
 
 import org.glavo.checksum.mode.CreateOrUpdate;
 import org.glavo.checksum.mode.Verify;
+import org.glavo.checksum.mode.Watch;
 import org.glavo.checksum.util.Lang;
 import org.glavo.checksum.util.Logger;
 
@@ -88,6 +89,10 @@ public final class Main {
                 case "update":
                     CreateOrUpdate.createOrUpdate(iterator, true);
                     break;
+                case "w":
+                case "watch":
+                    Watch.watch(iterator);
+                    break;
 
                 case "-?":
                 case "-h":
@@ -17,13 +17,19 @@
 package org.glavo.checksum;
 
 import org.glavo.checksum.hash.Hasher;
+import org.glavo.checksum.hash.IOMode;
+import org.glavo.checksum.mode.FileOrder;
+import org.glavo.checksum.util.ChecksumThreadFactory;
 import org.glavo.checksum.util.Lang;
 import org.glavo.checksum.util.Logger;
+import org.glavo.checksum.util.StorageInfo;
+import org.glavo.checksum.util.VirtualThreads;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 public class Options {
     protected final Lang lang = Lang.getInstance();
@@ -35,7 +41,22 @@ public class Options {
     public String directory;
     public String inputs;
     public Hasher algorithm;
+    public Hasher[] algorithms;
     public Integer numThreads;
+    public boolean autoNumThreads;
+    public Integer ioThreads;
+    public Integer hashThreads;
+    public boolean virtualThreads;
+    public boolean stream;
+    public boolean incremental;
+    public boolean paranoid;
+    public boolean cache;
+    public boolean xattr;
+    public boolean size;
+    public Integer maxPending;
+    public Integer debounce;
+    public FileOrder order;
+    public IOMode ioMode;
 
     public final Path basePath;
 
@@ -52,10 +73,6 @@ public class Options {
             }
         }
 
-        if (numThreads == null) {
-            numThreads = 4;
-        }
-
         basePath = Paths.get(directory == null ? "" : directory).toAbsolutePath();
         if (Files.notExists(basePath)) {
             Logger.error(lang.getPathNotExistMessage(basePath));
@@ -65,6 +82,52 @@ public class Options {
             throw Exit.error();
         }
 
+        if (numThreads == null) {
+            autoNumThreads = true;
+            numThreads = suggestNumThreads(basePath);
+        }
+
+        if (virtualThreads) {
+            if (!VirtualThreads.isSupported()) {
+                Logger.error(lang.getVirtualThreadsNotSupportedMessage());
+                throw Exit.error();
+            }
+            if (ioThreads != null || hashThreads != null) {
+                Logger.error(lang.getOptionMixedMessage("--virtual-threads", ioThreads != null ? "--io-threads" : "--hash-threads"));
+                throw Exit.error();
+            }
+        }
+
+        if (ioThreads != null || hashThreads != null) {
+            if (ioMode != null && ioMode != IOMode.READ) {
+                Logger.error(lang.getOptionMixedMessage("--io", ioThreads != null ? "--io-threads" : "--hash-threads"));
+                throw Exit.error();
+            }
+            if (ioThreads == null) {
+                ioThreads = numThreads;
+            }
+            if (hashThreads == null) {
+                hashThreads = numThreads;
+            }
+        }
+
+        if (paranoid && !incremental) {
+            Logger.error(lang.getOptionRequiresMessage("--paranoid", "--incremental"));
+            throw Exit.error();
+        }
+
+        if (order != null && order != FileOrder.FIFO && stream) {
+            Logger.error(lang.getOptionMixedMessage("--order", "--stream"));
+            throw Exit.error();
+        }
+        if (order == null) {
+            order = FileOrder.FIFO;
+        }
+
+        if (ioMode == null) {
+            ioMode = IOMode.READ;
+        }
+
         if (checksumsFile == null) {
             checksumsFile = "checksums.txt";
         }
@@ -80,6 +143,63 @@ public class Options {
         throw Exit.error();
     }
 
+    protected int nextPositiveInt(String option) throws Exit {
+        if (!iterator.hasNext()) {
+            reportMissArg(option);
+        }
+        return parsePositiveInt(option, iterator.next());
+    }
+
+    private int parsePositiveInt(String option, String value) throws Exit {
+        int n = 0;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException ignored) {
+        }
+        if (n <= 0) {
+            Logger.error(lang.getInvalidOptionValueMessage(option, value));
+            throw Exit.error();
+        }
+        return n;
+    }
+
+    /**
+     * Chooses the number of threads for the files on the storage of {@code path},
+     * from the kind of the storage, the number of processors and whether the algorithms are bound by the I/O.
+     */
+    public int suggestNumThreads(Path path) {
+        boolean fastHash = algorithms != null;
+        if (algorithms != null) {
+            for (Hasher hasher : algorithms) {
+                fastHash &= hasher.isFast();
+            }
+        }
+
+        return StorageInfo.of(path).suggestNumThreads(fastHash, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns {@code true} if the files of each storage device are hashed with their own number of threads,
+     * which is the case when the number of threads is chosen automatically.
+     */
+    public boolean perDevice() {
+        return autoNumThreads && !virtualThreads && !stream && !usePipeline();
+    }
+
+    /**
+     * Creates the executor that hashes files, with at most {@code numThreads} files hashed concurrently.
+     */
+    public ExecutorService newExecutor() {
+        return virtualThreads ? VirtualThreads.newExecutor(numThreads) : ChecksumThreadFactory.newPool(numThreads);
+    }
+
+    /**
+     * Returns {@code true} if the I/O and the hashing are done by separate threads.
+     */
+    public boolean usePipeline() {
+        return ioThreads != null;
+    }
+
     protected void parseOption(String option) throws Exit {
         switch (option) {
             case "-f":
@@ -126,32 +246,134 @@ public class Options {
                 if (algorithm != null) {
                     reportParamRespecified(option);
                 }
-                String algoName = iterator.next();
-                algorithm = Hasher.ofName(algoName);
-                if (algorithm == null) {
-                    Logger.error(lang.getUnsupportedAlgorithmMessage(algoName));
-                    throw Exit.error();
+                String algoNames = iterator.next();
+                String[] names = algoNames.split(",");
+                algorithms = new Hasher[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    final String algoName = names[i].trim();
+                    final Hasher hasher = Hasher.ofName(algoName);
+                    if (hasher == null) {
+                        Logger.error(lang.getUnsupportedAlgorithmMessage(algoName));
+                        throw Exit.error();
+                    }
+                    for (int j = 0; j < i; j++) {
+                        if (algorithms[j].getName().equals(hasher.getName())) {
+                            Logger.error(lang.getInvalidOptionValueMessage(option, algoNames));
+                            throw Exit.error();
+                        }
+                    }
+                    algorithms[i] = hasher;
                 }
+                algorithm = algorithms[0];
                 break;
             case "-n":
             case "--num-threads":
+                if (numThreads != null || autoNumThreads) {
+                    reportParamRespecified(option);
+                }
                 if (!iterator.hasNext()) {
                     reportMissArg(option);
                 }
-                if (numThreads != null) {
+                String threads = iterator.next();
+                if ("auto".equalsIgnoreCase(threads)) {
+                    autoNumThreads = true;
+                } else {
+                    numThreads = parsePositiveInt(option, threads);
+                }
+                break;
+            case "--io-threads":
+                if (ioThreads != null) {
+                    reportParamRespecified(option);
+                }
+                ioThreads = nextPositiveInt(option);
+                break;
+            case "--hash-threads":
+                if (hashThreads != null) {
+                    reportParamRespecified(option);
+                }
+                hashThreads = nextPositiveInt(option);
+                break;
+            case "--virtual-threads":
+                if (virtualThreads) {
+                    reportParamRespecified(option);
+                }
+                virtualThreads = true;
+                break;
+            case "--debounce":
+                if (debounce != null) {
+                    reportParamRespecified(option);
+                }
+                debounce = nextPositiveInt(option);
+                break;
+            case "--max-pending":
+                if (maxPending != null) {
+                    reportParamRespecified(option);
+                }
+                maxPending = nextPositiveInt(option);
+                break;
+            case "--incremental":
+                if (incremental) {
+                    reportParamRespecified(option);
+                }
+                incremental = true;
+                break;
+            case "--paranoid":
+                if (paranoid) {
                     reportParamRespecified(option);
                 }
-                String nt = iterator.next();
-                int n = 0;
-                try {
-                    n = Integer.parseInt(nt);
-                } catch (NumberFormatException ignored) {
+                paranoid = true;
+                break;
+            case "--cache":
+                if (cache) {
+                    reportParamRespecified(option);
+                }
+                cache = true;
+                break;
+            case "--xattr":
+                if (xattr) {
+                    reportParamRespecified(option);
+                }
+                xattr = true;
+                break;
+            case "--size":
+                if (size) {
+                    reportParamRespecified(option);
+                }
+                size = true;
+                break;
+            case "--stream":
+                if (stream) {
+                    reportParamRespecified(option);
+                }
+                stream = true;
+                break;
+            case "--order":
+                if (!iterator.hasNext()) {
+                    reportMissArg(option);
+                }
+                if (order != null) {
+                    reportParamRespecified(option);
+                }
+                String orderName = iterator.next();
+                order = FileOrder.ofName(orderName);
+                if (order == null) {
+                    Logger.error(lang.getInvalidOptionValueMessage(option, orderName));
+                    throw Exit.error();
+                }
+                break;
+            case "--io":
+                if (!iterator.hasNext()) {
+                    reportMissArg(option);
+                }
+                if (ioMode != null) {
+                    reportParamRespecified(option);
                 }
-                if (n <= 0) {
-                    Logger.error(lang.getInvalidOptionValueMessage(option, nt));
+                String mode = iterator.next();
+                ioMode = IOMode.ofName(mode);
+                if (ioMode == null) {
+                    Logger.error(lang.getInvalidOptionValueMessage(option, mode));
                     throw Exit.error();
                 }
-                numThreads = n;
                 break;
             case "-y":
             case "--yes":
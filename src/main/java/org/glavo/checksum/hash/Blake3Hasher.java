@@ -0,0 +1,497 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.LittleEndianByteArray;
+import org.glavo.checksum.util.Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+// The implementation references https://github.com/BLAKE3-team/BLAKE3/tree/master/reference_impl
+final class Blake3Hasher extends HasherBase {
+    private static final int OUT_LEN = 32;
+    private static final int BLOCK_LEN = 64;
+    private static final int CHUNK_LEN = 1024;
+    private static final int BLOCKS_PER_CHUNK = CHUNK_LEN / BLOCK_LEN;
+
+    private static final int CHUNK_START = 1 << 0;
+    private static final int CHUNK_END = 1 << 1;
+    private static final int PARENT = 1 << 2;
+    private static final int ROOT = 1 << 3;
+
+    // Enough for 2^54 chunks, the maximum input length is 2^64 bytes
+    private static final int MAX_DEPTH = 54;
+
+    private static final int[] IV = {
+            0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A, 0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19
+    };
+
+    /**
+     * Large files are split into units of {@code 2^n} chunks whose subtrees are hashed in parallel.
+     */
+    private static final int CHUNKS_PER_UNIT = 1024;
+    private static final long UNIT_SIZE = (long) CHUNKS_PER_UNIT * CHUNK_LEN; // 1 MiB
+
+    static final Blake3Hasher DEFAULT = new Blake3Hasher();
+
+    private Blake3Hasher() {
+        super("BLAKE3", OUT_LEN);
+    }
+
+    @Override
+    public boolean isFast() {
+        return true;
+    }
+
+    @Override
+    protected Context createContext() {
+        return new Context();
+    }
+
+    /**
+     * Compresses the message {@code block} into the chaining value {@code cv},
+     * and stores the first 8 words of the output to {@code out}.
+     */
+    private static void compress(int[] cv, int cvOffset, int[] block, long counter, int blockLen, int flags, int[] out, int outOffset) {
+        int v0 = cv[cvOffset];
+        int v1 = cv[cvOffset + 1];
+        int v2 = cv[cvOffset + 2];
+        int v3 = cv[cvOffset + 3];
+        int v4 = cv[cvOffset + 4];
+        int v5 = cv[cvOffset + 5];
+        int v6 = cv[cvOffset + 6];
+        int v7 = cv[cvOffset + 7];
+        int v8 = IV[0];
+        int v9 = IV[1];
+        int v10 = IV[2];
+        int v11 = IV[3];
+        int v12 = (int) counter;
+        int v13 = (int) (counter >>> 32);
+        int v14 = blockLen;
+        int v15 = flags;
+
+        int m0 = block[0];
+        int m1 = block[1];
+        int m2 = block[2];
+        int m3 = block[3];
+        int m4 = block[4];
+        int m5 = block[5];
+        int m6 = block[6];
+        int m7 = block[7];
+        int m8 = block[8];
+        int m9 = block[9];
+        int m10 = block[10];
+        int m11 = block[11];
+        int m12 = block[12];
+        int m13 = block[13];
+        int m14 = block[14];
+        int m15 = block[15];
+
+        for (int round = 0; round < 7; round++) {
+            // Mix the columns
+            v0 += v4 + m0;
+            v12 = Integer.rotateRight(v12 ^ v0, 16);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 12);
+            v0 += v4 + m1;
+            v12 = Integer.rotateRight(v12 ^ v0, 8);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 7);
+
+            v1 += v5 + m2;
+            v13 = Integer.rotateRight(v13 ^ v1, 16);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 12);
+            v1 += v5 + m3;
+            v13 = Integer.rotateRight(v13 ^ v1, 8);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 7);
+
+            v2 += v6 + m4;
+            v14 = Integer.rotateRight(v14 ^ v2, 16);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 12);
+            v2 += v6 + m5;
+            v14 = Integer.rotateRight(v14 ^ v2, 8);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 7);
+
+            v3 += v7 + m6;
+            v15 = Integer.rotateRight(v15 ^ v3, 16);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 12);
+            v3 += v7 + m7;
+            v15 = Integer.rotateRight(v15 ^ v3, 8);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 7);
+
+            // Mix the diagonals
+            v0 += v5 + m8;
+            v15 = Integer.rotateRight(v15 ^ v0, 16);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 12);
+            v0 += v5 + m9;
+            v15 = Integer.rotateRight(v15 ^ v0, 8);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 7);
+
+            v1 += v6 + m10;
+            v12 = Integer.rotateRight(v12 ^ v1, 16);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 12);
+            v1 += v6 + m11;
+            v12 = Integer.rotateRight(v12 ^ v1, 8);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 7);
+
+            v2 += v7 + m12;
+            v13 = Integer.rotateRight(v13 ^ v2, 16);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 12);
+            v2 += v7 + m13;
+            v13 = Integer.rotateRight(v13 ^ v2, 8);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 7);
+
+            v3 += v4 + m14;
+            v14 = Integer.rotateRight(v14 ^ v3, 16);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 12);
+            v3 += v4 + m15;
+            v14 = Integer.rotateRight(v14 ^ v3, 8);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 7);
+
+            // Permute the message words by (2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12, 5, 9, 14, 15, 8)
+            final int n0 = m2;
+            final int n1 = m6;
+            final int n2 = m3;
+            final int n3 = m10;
+            final int n4 = m7;
+            final int n5 = m0;
+            final int n6 = m4;
+            final int n7 = m13;
+            final int n8 = m1;
+            final int n9 = m11;
+            final int n10 = m12;
+            final int n11 = m5;
+            final int n12 = m9;
+            final int n13 = m14;
+            final int n14 = m15;
+            final int n15 = m8;
+            m0 = n0;
+            m1 = n1;
+            m2 = n2;
+            m3 = n3;
+            m4 = n4;
+            m5 = n5;
+            m6 = n6;
+            m7 = n7;
+            m8 = n8;
+            m9 = n9;
+            m10 = n10;
+            m11 = n11;
+            m12 = n12;
+            m13 = n13;
+            m14 = n14;
+            m15 = n15;
+        }
+
+        out[outOffset] = v0 ^ v8;
+        out[outOffset + 1] = v1 ^ v9;
+        out[outOffset + 2] = v2 ^ v10;
+        out[outOffset + 3] = v3 ^ v11;
+        out[outOffset + 4] = v4 ^ v12;
+        out[outOffset + 5] = v5 ^ v13;
+        out[outOffset + 6] = v6 ^ v14;
+        out[outOffset + 7] = v7 ^ v15;
+    }
+
+    private static void loadBlock(ByteBuffer input, int offset, int[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = LittleEndianByteArray.getInt(input, offset + (i << 2));
+        }
+    }
+
+    private static void loadBlock(byte[] input, int offset, int[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = LittleEndianByteArray.getInt(input, offset + (i << 2));
+        }
+    }
+
+    @Override
+    public String hash(SeekableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel && ParallelRanges.isParallel()) {
+            final long position = channel.position();
+            final long size = channel.size() - position;
+            if (size > 2 * UNIT_SIZE) {
+                return hashParallel((FileChannel) channel, position, size, false);
+            }
+        }
+        return super.hash(channel);
+    }
+
+    @Override
+    String hashMapped(FileChannel channel, long size) throws IOException {
+        if (ParallelRanges.isParallel() && size > 2 * UNIT_SIZE) {
+            return hashParallel(channel, 0, size, true);
+        }
+        return super.hashMapped(channel, size);
+    }
+
+    /**
+     * Hashes the complete units in parallel, then feeds their chaining values and the remaining bytes to one context.
+     * The last unit always goes through the context, so it finalizes the root node as usual.
+     */
+    private String hashParallel(FileChannel channel, long position, long size, boolean mapped) throws IOException {
+        final int units = Math.toIntExact((size - 1) / UNIT_SIZE);
+        final int[] cvs = new int[units * 8];
+
+        ParallelRanges.forEach(units, index -> {
+            final Context context = (Context) acquireContext();
+            try {
+                context.reset((long) index * CHUNKS_PER_UNIT);
+                context.update(channel, position + index * UNIT_SIZE, UNIT_SIZE, mapped);
+                context.subtreeChainingValue(cvs, index * 8);
+            } finally {
+                releaseContext(context);
+            }
+        });
+
+        final Context context = (Context) acquireContext();
+        try {
+            for (int i = 0; i < units; i++) {
+                context.pushSubtree(cvs, i * 8, CHUNKS_PER_UNIT);
+            }
+            final long offset = units * UNIT_SIZE;
+            context.update(channel, position + offset, size - offset, mapped);
+            return context.digest();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    protected static final class Context extends HasherBase.Context {
+        private final int[] m = new int[16];
+        private final int[] outputCV = new int[8];
+
+        // Chunk state
+        private final int[] cv = new int[8];
+        private long chunkCounter;
+        private final byte[] block = new byte[BLOCK_LEN];
+        private int blockLen;
+        private int blocksCompressed;
+
+        // Chaining values of the completed subtrees, merged lazily
+        private final int[] cvStack = new int[MAX_DEPTH * 8];
+        private int cvStackLen;
+        private long baseChunkCounter;
+
+        Context() {
+            reset();
+        }
+
+        void reset(long chunkCounter) {
+            System.arraycopy(IV, 0, cv, 0, 8);
+            this.chunkCounter = chunkCounter;
+            this.baseChunkCounter = chunkCounter;
+            this.blockLen = 0;
+            this.blocksCompressed = 0;
+            this.cvStackLen = 0;
+        }
+
+        private int startFlag() {
+            return blocksCompressed == 0 ? CHUNK_START : 0;
+        }
+
+        private void compressBlock(ByteBuffer input, int offset) {
+            loadBlock(input, offset, m);
+            compress(cv, 0, m, chunkCounter, BLOCK_LEN, startFlag(), cv, 0);
+            blocksCompressed++;
+        }
+
+        private void compressBlock(byte[] input, int offset) {
+            loadBlock(input, offset, m);
+            compress(cv, 0, m, chunkCounter, BLOCK_LEN, startFlag(), cv, 0);
+            blocksCompressed++;
+        }
+
+        /**
+         * Merges the completed subtrees on the stack, so that it holds one subtree for each bit of {@code totalChunks}.
+         */
+        private void mergeStack(long totalChunks) {
+            final int targetLen = Long.bitCount(totalChunks - baseChunkCounter);
+            while (cvStackLen > targetLen) {
+                cvStackLen--;
+                final int left = (cvStackLen - 1) * 8;
+                System.arraycopy(cvStack, left, m, 0, 16);
+                compress(IV, 0, m, 0, BLOCK_LEN, PARENT, cvStack, left);
+            }
+        }
+
+        private void pushChainingValue(int[] chainingValue, int offset) {
+            mergeStack(chunkCounter);
+            System.arraycopy(chainingValue, offset, cvStack, cvStackLen * 8, 8);
+            cvStackLen++;
+        }
+
+        /**
+         * Adds the chaining value of a subtree of {@code chunks} chunks, which must be a power of 2.
+         * No input may have been buffered in the current chunk.
+         */
+        void pushSubtree(int[] chainingValue, int offset, int chunks) {
+            pushChainingValue(chainingValue, offset);
+            chunkCounter += chunks;
+        }
+
+        private void finishChunk() {
+            loadBlock(block, 0, m);
+            compress(cv, 0, m, chunkCounter, BLOCK_LEN, startFlag() | CHUNK_END, outputCV, 0);
+            pushChainingValue(outputCV, 0);
+
+            System.arraycopy(IV, 0, cv, 0, 8);
+            chunkCounter++;
+            blockLen = 0;
+            blocksCompressed = 0;
+        }
+
+        /**
+         * Compresses the buffered block if it is full. It is only compressed when more input arrives,
+         * because the last block of the input must be compressed with the ROOT flag.
+         */
+        private void compressFullBlock() {
+            if (blockLen == BLOCK_LEN) {
+                if (blocksCompressed == BLOCKS_PER_CHUNK - 1) {
+                    finishChunk();
+                } else {
+                    compressBlock(block, 0);
+                    blockLen = 0;
+                }
+            }
+        }
+
+        @Override
+        protected void update(byte[] input, int offset, int len) {
+            final int limit = offset + len;
+
+            while (offset < limit) {
+                compressFullBlock();
+
+                if (blockLen == 0) {
+                    while (limit - offset > BLOCK_LEN && blocksCompressed < BLOCKS_PER_CHUNK - 1) {
+                        compressBlock(input, offset);
+                        offset += BLOCK_LEN;
+                    }
+                }
+
+                final int n = Math.min(BLOCK_LEN - blockLen, limit - offset);
+                System.arraycopy(input, offset, block, blockLen, n);
+                blockLen += n;
+                offset += n;
+            }
+        }
+
+        @Override
+        protected void update(ByteBuffer input) {
+            int offset = input.position();
+            final int limit = input.limit();
+
+            while (offset < limit) {
+                compressFullBlock();
+
+                if (blockLen == 0) {
+                    while (limit - offset > BLOCK_LEN && blocksCompressed < BLOCKS_PER_CHUNK - 1) {
+                        compressBlock(input, offset);
+                        offset += BLOCK_LEN;
+                    }
+                }
+
+                final int n = Math.min(BLOCK_LEN - blockLen, limit - offset);
+                input.position(offset);
+                input.get(block, blockLen, n);
+                blockLen += n;
+                offset += n;
+            }
+
+            input.position(limit);
+        }
+
+        /**
+         * Folds the stack and the current chunk into the output node, and compresses it with the given flags.
+         */
+        private void finish(int extraFlags, int[] out, int outOffset) {
+            mergeStack(chunkCounter);
+
+            Arrays.fill(block, blockLen, BLOCK_LEN, (byte) 0);
+            loadBlock(block, 0, m);
+
+            int[] nodeCV = cv;
+            long counter = chunkCounter;
+            int nodeBlockLen = blockLen;
+            int flags = startFlag() | CHUNK_END;
+
+            for (int i = cvStackLen - 1; i >= 0; i--) {
+                compress(nodeCV, 0, m, counter, nodeBlockLen, flags, outputCV, 0);
+                System.arraycopy(cvStack, i * 8, m, 0, 8);
+                System.arraycopy(outputCV, 0, m, 8, 8);
+
+                nodeCV = IV;
+                counter = 0;
+                nodeBlockLen = BLOCK_LEN;
+                flags = PARENT;
+            }
+
+            compress(nodeCV, 0, m, counter, nodeBlockLen, flags | extraFlags, out, outOffset);
+        }
+
+        /**
+         * Writes the chaining value of the subtree hashed by this context, which must not be the root.
+         */
+        void subtreeChainingValue(int[] out, int outOffset) {
+            finish(0, out, outOffset);
+        }
+
+        @Override
+        protected void digest(byte[] output, int offset) {
+            finish(ROOT, outputCV, 0);
+            for (int i = 0; i < 8; i++) {
+                final int word = outputCV[i];
+                output[offset + i * 4] = (byte) word;
+                output[offset + i * 4 + 1] = (byte) (word >>> 8);
+                output[offset + i * 4 + 2] = (byte) (word >>> 16);
+                output[offset + i * 4 + 3] = (byte) (word >>> 24);
+            }
+        }
+
+        @Override
+        protected String digest() {
+            final byte[] result = new byte[OUT_LEN];
+            digest(result, 0);
+            return Utils.encodeHex(result);
+        }
+
+        @Override
+        protected void reset() {
+            reset(0L);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+/**
+ * Combines the checksums of two adjacent byte sequences into the checksum of their concatenation,
+ * given only the checksums and the length of the second sequence.
+ * <p>
+ * The algorithms are ported from {@code crc32_combine} and {@code adler32_combine} of zlib.
+ */
+@FunctionalInterface
+interface ChecksumCombiner {
+
+    ChecksumCombiner CRC32 = crc(0xedb88320);
+
+    ChecksumCombiner CRC32C = crc(0x82f63b78);
+
+    ChecksumCombiner ADLER32 = (adler1, adler2, length2) -> {
+        final long base = 65521;
+
+        final long rem = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return (int) (sum1 | (sum2 << 16));
+    };
+
+    /**
+     * Returns the checksum of {@code A || B}, where {@code value1} is the checksum of {@code A},
+     * {@code value2} is the checksum of {@code B} and {@code length2} is the length of {@code B}.
+     */
+    int combine(int value1, int value2, long length2);
+
+    /**
+     * Returns the combiner of a reflected CRC-32 with the given polynomial (pre- and post-conditioned with {@code ~0}).
+     * <p>
+     * Appending {@code n} zero bytes to the message is a linear operator over GF(2),
+     * it is applied to {@code value1} by repeated squaring of the single zero bit operator.
+     */
+    static ChecksumCombiner crc(int polynomial) {
+        return (crc1, crc2, length2) -> {
+            if (length2 <= 0) {
+                return crc1;
+            }
+
+            final int[] even = new int[32];
+            final int[] odd = new int[32];
+
+            // operator for one zero bit
+            odd[0] = polynomial;
+            int row = 1;
+            for (int n = 1; n < 32; n++) {
+                odd[n] = row;
+                row <<= 1;
+            }
+
+            gf2MatrixSquare(even, odd); // two zero bits
+            gf2MatrixSquare(odd, even); // four zero bits
+
+            // the first squaring puts the operator for one zero byte into even
+            long len = length2;
+            do {
+                gf2MatrixSquare(even, odd);
+                if ((len & 1) != 0) {
+                    crc1 = gf2MatrixTimes(even, crc1);
+                }
+                len >>>= 1;
+                if (len == 0) {
+                    break;
+                }
+
+                gf2MatrixSquare(odd, even);
+                if ((len & 1) != 0) {
+                    crc1 = gf2MatrixTimes(odd, crc1);
+                }
+                len >>>= 1;
+            } while (len != 0);
+
+            return crc1 ^ crc2;
+        };
+    }
+
+    private static int gf2MatrixTimes(int[] matrix, int vector) {
+        int sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(int[] square, int[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+}
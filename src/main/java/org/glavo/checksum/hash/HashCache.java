@@ -0,0 +1,668 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.IOUtils;
+import org.glavo.checksum.util.Lang;
+import org.glavo.checksum.util.Logger;
+import org.glavo.checksum.util.Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * A cache of the hashes of files shared by all runs of {@code --cache}, so a file that has not changed since it was
+ * hashed by any earlier run is not read again.
+ * <p>
+ * The hashes are keyed by the device, inode, size, modification time and status change time of the file,
+ * and the algorithm. They are stored in an append-only log of fixed-size records in
+ * {@code $XDG_CACHE_HOME/gchecksum} (by default {@code ~/.cache/gchecksum}), which is memory-mapped when the cache is
+ * opened and indexed by an open-addressing hash table. The new records are buffered and appended in batches,
+ * each record has a checksum, so a record torn by a crash or a concurrent writer is ignored.
+ * <p>
+ * The records are written under a lock file, so several processes can share the cache. When the log grows beyond
+ * its maximum size, it is compacted to its newest records, which take half of the maximum size. A record found
+ * among the records that would be dropped is appended again, so the records that are still used are kept.
+ * <p>
+ * With {@code --xattr}, the hashes are also recorded in the extended attributes of the files,
+ * see {@link XattrHashes}. They are trusted when the size and modification time of the file have not changed,
+ * and are also used on file systems without inode numbers.
+ */
+public final class HashCache implements Closeable {
+    static final int RECORD_SIZE = 128;
+    static final int MAX_DIGEST_LENGTH = 64;
+
+    private static final int ALGORITHM_OFFSET = 40;
+    private static final int DIGEST_LENGTH_OFFSET = 48;
+    private static final int DIGEST_OFFSET = 49;
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - 4;
+
+    static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024; // 512Ki records
+
+    /**
+     * The appended records are written to the log when this many bytes are pending.
+     */
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    static final String LOG_FILE = "hashes-v1.log";
+    private static final String LOCK_FILE = "hashes.lock";
+
+    /**
+     * Files changed this shortly before they are hashed may be changed again within the granularity
+     * of the file system timestamps, so they are not cached.
+     */
+    private static final long RACY_MARGIN = TimeUnit.SECONDS.toNanos(2);
+
+    static final class Key {
+        static final long UNKNOWN = -1L;
+
+        final long device;
+        final long inode;
+        final long size;
+        final long mtime;
+        final long ctime;
+
+        Key(long device, long inode, long size, long mtime, long ctime) {
+            this.device = device;
+            this.inode = inode;
+            this.size = size;
+            this.mtime = mtime;
+            this.ctime = ctime;
+        }
+
+        /**
+         * Returns {@code false} if the file system does not provide the device and inode of the file,
+         * the key can then only be used with the extended attributes of the file.
+         */
+        boolean hasFileId() {
+            return device != UNKNOWN || inode != UNKNOWN;
+        }
+
+        /**
+         * Returns {@code true} if the file was changed too recently before {@code now} to be cached.
+         */
+        boolean isRacy(long now) {
+            return mtime >= now - RACY_MARGIN || ctime >= now - RACY_MARGIN;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return device == other.device && inode == other.inode && size == other.size
+                   && mtime == other.mtime && ctime == other.ctime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash(this, 0L));
+        }
+    }
+
+    private final Path directory;
+    private final long maxSize;
+    private final boolean xattr;
+
+    private final ByteBuffer log;
+    private final int recordCount;
+    private final int[] slots;
+
+    private final ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    /**
+     * Computes the checksums of the records written or compacted, guarded by this cache.
+     */
+    private final CRC32C crc = new CRC32C();
+
+    /**
+     * Checks the records looked up, the lookups are not synchronized.
+     */
+    private static final ThreadLocal<CRC32C> LOOKUP_CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    HashCache(Path directory, long maxSize) throws IOException {
+        this(directory, maxSize, false);
+    }
+
+    /**
+     * @param directory the directory of the log, or {@code null} if only the extended attributes are used
+     */
+    HashCache(Path directory, long maxSize, boolean xattr) throws IOException {
+        this.directory = directory;
+        this.maxSize = Math.min(maxSize, Integer.MAX_VALUE / 2);
+        this.xattr = xattr;
+
+        final Path logFile = directory != null ? directory.resolve(LOG_FILE) : null;
+        ByteBuffer log = ByteBuffer.allocate(0);
+        if (logFile != null && Files.isRegularFile(logFile)) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                // A record being written by another process is ignored
+                final long size = Math.min(channel.size(), Integer.MAX_VALUE) / RECORD_SIZE * RECORD_SIZE;
+                if (size > 0) {
+                    log = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                }
+            }
+        }
+        this.log = log;
+        this.recordCount = log.capacity() / RECORD_SIZE;
+
+        int capacity = 16;
+        while (capacity < recordCount * 2) {
+            capacity <<= 1;
+        }
+        this.slots = new int[capacity];
+        for (int i = 0; i < recordCount; i++) {
+            index(i);
+        }
+    }
+
+    /**
+     * Opens the cache, or reports the error and returns {@code null} if the cache cannot be opened.
+     *
+     * @param log   whether the log in the default directory is used
+     * @param xattr whether the extended attributes of the files are used
+     */
+    public static HashCache open(boolean log, boolean xattr) {
+        final Path directory = log ? defaultDirectory() : null;
+        try {
+            long maxSize = DEFAULT_MAX_SIZE;
+            final String size = System.getProperty("org.glavo.checksum.cache.size");
+            if (size != null) {
+                try {
+                    maxSize = Long.parseLong(size);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return new HashCache(directory, Math.max(maxSize, RECORD_SIZE), xattr);
+        } catch (IOException | RuntimeException e) {
+            Logger.error(Lang.getInstance().getCacheErrorMessage(directory), e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the files of the cache, which are not hashed when the cache is inside the tree.
+     */
+    public Path[] getFiles() {
+        if (directory == null) {
+            return new Path[0];
+        }
+        return new Path[]{directory.resolve(LOG_FILE), directory.resolve(LOG_FILE + ".tmp"), directory.resolve(LOCK_FILE)};
+    }
+
+    static Path defaultDirectory() {
+        final String property = System.getProperty("org.glavo.checksum.cache.dir");
+        if (property != null) {
+            return Paths.get(property).toAbsolutePath();
+        }
+
+        final String xdgCacheHome = System.getenv("XDG_CACHE_HOME");
+        if (xdgCacheHome != null && !xdgCacheHome.isEmpty() && Paths.get(xdgCacheHome).isAbsolute()) {
+            return Paths.get(xdgCacheHome, "gchecksum");
+        }
+        return Paths.get(System.getProperty("user.home"), ".cache", "gchecksum");
+    }
+
+    private static long toNanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    private static long now() {
+        final Instant now = Instant.now();
+        return TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+    }
+
+    /**
+     * Returns the key of the file, or {@code null} if the attributes of the file cannot be read.
+     * Where the file system does not provide the Unix attributes, only the size and modification time are known.
+     */
+    static Key keyOf(Path file) {
+        final Map<String, Object> attrs;
+        try {
+            attrs = Files.readAttributes(file, "unix:dev,ino,size,lastModifiedTime,ctime");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            try {
+                final BasicFileAttributes basic = Files.readAttributes(file, BasicFileAttributes.class);
+                return new Key(Key.UNKNOWN, Key.UNKNOWN, basic.size(), toNanos(basic.lastModifiedTime()), Key.UNKNOWN);
+            } catch (IOException ex) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        final Object device = attrs.get("dev");
+        final Object inode = attrs.get("ino");
+        final Object size = attrs.get("size");
+        final Object mtime = attrs.get("lastModifiedTime");
+        final Object ctime = attrs.get("ctime");
+        if (!(device instanceof Long && inode instanceof Long && size instanceof Long
+              && mtime instanceof FileTime && ctime instanceof FileTime)) {
+            return null;
+        }
+        return new Key((Long) device, (Long) inode, (Long) size, toNanos((FileTime) mtime), toNanos((FileTime) ctime));
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the algorithm name, which identifies the algorithm in the records.
+     */
+    static long algorithmId(Hasher hasher) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : hasher.getName().getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long hash(long device, long inode, long size, long mtime, long ctime, long algorithm) {
+        long hash = algorithm;
+        hash = (hash ^ device) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ inode) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ size) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ mtime) * 0x9E3779B97F4A7C15L;
+        hash = (hash ^ ctime) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 32);
+    }
+
+    private static long hash(Key key, long algorithm) {
+        return hash(key.device, key.inode, key.size, key.mtime, key.ctime, algorithm);
+    }
+
+    private static Key keyAt(ByteBuffer buffer, int offset) {
+        return new Key(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+    }
+
+    private static boolean matches(ByteBuffer buffer, int offset, Key key, long algorithm) {
+        return buffer.getLong(offset) == key.device
+               && buffer.getLong(offset + 8) == key.inode
+               && buffer.getLong(offset + 16) == key.size
+               && buffer.getLong(offset + 24) == key.mtime
+               && buffer.getLong(offset + 32) == key.ctime
+               && buffer.getLong(offset + ALGORITHM_OFFSET) == algorithm;
+    }
+
+    private static int checksum(CRC32C crc, ByteBuffer buffer, int offset) {
+        crc.reset();
+        crc.update(buffer.duplicate().limit(offset + CHECKSUM_OFFSET).position(offset));
+        return (int) crc.getValue();
+    }
+
+    private static boolean isValid(CRC32C crc, ByteBuffer buffer, int offset) {
+        final int digestLength = buffer.get(offset + DIGEST_LENGTH_OFFSET) & 0xff;
+        return digestLength > 0 && digestLength <= MAX_DIGEST_LENGTH
+               && buffer.getInt(offset + CHECKSUM_OFFSET) == checksum(crc, buffer, offset);
+    }
+
+    /**
+     * Returns the number of the newest records kept when the log is compacted.
+     */
+    private int keptRecords() {
+        return (int) (maxSize / 2 / RECORD_SIZE);
+    }
+
+    /**
+     * Adds the record to the index without checking it, the checksum is only checked by {@link #find},
+     * so opening the cache does not have to checksum the whole log.
+     */
+    private void index(int record) {
+        final int offset = record * RECORD_SIZE;
+        final long device = log.getLong(offset);
+        final long inode = log.getLong(offset + 8);
+        final long size = log.getLong(offset + 16);
+        final long mtime = log.getLong(offset + 24);
+        final long ctime = log.getLong(offset + 32);
+        final long algorithm = log.getLong(offset + ALGORITHM_OFFSET);
+
+        final int mask = slots.length - 1;
+        int i = (int) hash(device, inode, size, mtime, ctime, algorithm) & mask;
+        int slot;
+        while ((slot = slots[i]) != 0) {
+            final int other = (slot - 1) * RECORD_SIZE;
+            if (log.getLong(other) == device
+                && log.getLong(other + 8) == inode
+                && log.getLong(other + 16) == size
+                && log.getLong(other + 24) == mtime
+                && log.getLong(other + 32) == ctime
+                && log.getLong(other + ALGORITHM_OFFSET) == algorithm) {
+                break; // The later record replaces the earlier one
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = record + 1;
+    }
+
+    /**
+     * Returns the record of the key and algorithm, or {@code -1} if there is none or it is torn.
+     */
+    private int find(Key key, long algorithm) {
+        final int mask = slots.length - 1;
+        int i = (int) hash(key, algorithm) & mask;
+        int slot;
+        while ((slot = slots[i]) != 0) {
+            if (matches(log, (slot - 1) * RECORD_SIZE, key, algorithm)) {
+                return isValid(LOOKUP_CRC.get(), log, (slot - 1) * RECORD_SIZE) ? slot - 1 : -1;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the cached hashes of each algorithm, or {@code null} unless the hashes of all algorithms are cached.
+     */
+    String[] get(Key key, Hasher[] hashers) {
+        if (!key.hasFileId()) {
+            return null;
+        }
+
+        final int[] records = new int[hashers.length];
+        for (int i = 0; i < hashers.length; i++) {
+            if ((records[i] = find(key, algorithmId(hashers[i]))) < 0) {
+                return null;
+            }
+        }
+
+        final String[] hashes = new String[hashers.length];
+        for (int i = 0; i < hashers.length; i++) {
+            final int offset = records[i] * RECORD_SIZE;
+            final byte[] digest = new byte[log.get(offset + DIGEST_LENGTH_OFFSET) & 0xff];
+            log.duplicate().position(offset + DIGEST_OFFSET).get(digest);
+            hashes[i] = Utils.encodeHex(digest);
+
+            if (records[i] < recordCount - keptRecords()) {
+                // Keep the record when the log is compacted
+                synchronized (this) {
+                    append(log.duplicate().limit(offset + RECORD_SIZE).position(offset));
+                }
+            }
+        }
+        return hashes;
+    }
+
+    void put(Key key, Hasher[] hashers, String[] hashes) {
+        if (directory == null || !key.hasFileId()) {
+            return;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        synchronized (this) {
+            for (int i = 0; i < hashers.length; i++) {
+                final int digestLength = hashes[i].length() / 2;
+                if (digestLength == 0 || digestLength > MAX_DIGEST_LENGTH) {
+                    continue;
+                }
+
+                final byte[] digest = new byte[digestLength];
+                Utils.decodeHex(hashes[i], digest, 0);
+
+                record.clear();
+                record.putLong(key.device)
+                        .putLong(key.inode)
+                        .putLong(key.size)
+                        .putLong(key.mtime)
+                        .putLong(key.ctime)
+                        .putLong(algorithmId(hashers[i]))
+                        .put((byte) digestLength)
+                        .put(digest);
+
+                record.putInt(CHECKSUM_OFFSET, checksum(crc, record, 0));
+                record.clear();
+                append(record);
+            }
+        }
+    }
+
+    private void append(ByteBuffer record) {
+        if (pending.remaining() < RECORD_SIZE) {
+            try {
+                flush();
+            } catch (IOException e) {
+                Logger.error(Lang.getInstance().getCacheErrorMessage(directory), e);
+                pending.clear(); // The records are dropped, they will be hashed again
+            }
+        }
+        pending.put(record);
+    }
+
+    /**
+     * Returns the hashes of the file from the cache, or hashes the file and caches the hashes.
+     */
+    public String[] hashFile(Path file, IOMode mode, Hasher[] hashers) throws IOException {
+        final Key key = keyOf(file);
+        if (key == null) {
+            return Hasher.hashFile(file, mode, hashers);
+        }
+
+        final String[] cached = lookup(file, key, hashers);
+        if (cached != null) {
+            return cached;
+        }
+
+        final long start = now();
+        final String[] hashes = Hasher.hashFile(file, mode, hashers);
+        completed(file, key, start, hashers, hashes);
+        return hashes;
+    }
+
+    /**
+     * Returns the hashes of the file from the cache, or starts hashing the file with {@code hash}
+     * and caches the hashes when they are computed.
+     */
+    public CompletableFuture<String[]> hashFile(Path file, Hasher[] hashers, BiFunction<Path, Hasher[], CompletableFuture<String[]>> hash) {
+        final Key key = keyOf(file);
+        if (key == null) {
+            return hash.apply(file, hashers);
+        }
+
+        final String[] cached = lookup(file, key, hashers);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final long start = now();
+        return hash.apply(file, hashers).thenApply(hashes -> {
+            completed(file, key, start, hashers, hashes);
+            return hashes;
+        });
+    }
+
+    private String[] lookup(Path file, Key key, Hasher[] hashers) {
+        String[] hashes = get(key, hashers);
+        if (hashes == null && xattr) {
+            hashes = XattrHashes.read(file, hashers, key.size, key.mtime);
+            if (hashes != null) {
+                put(key, hashers, hashes);
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Caches the hashes unless the file was changed while it was being hashed.
+     */
+    private void completed(Path file, Key key, long start, Hasher[] hashers, String[] hashes) {
+        if (key.isRacy(start) || !key.equals(keyOf(file))) {
+            return;
+        }
+
+        if (xattr) {
+            XattrHashes.write(file, hashers, hashes, key.size, key.mtime);
+
+            // Writing the attributes changes the status change time
+            final Key current = keyOf(file);
+            if (current != null && current.size == key.size && current.mtime == key.mtime) {
+                put(current, hashers, hashes);
+            }
+        } else {
+            put(key, hashers, hashes);
+        }
+    }
+
+    private FileChannel lock() throws IOException {
+        Files.createDirectories(directory);
+        return FileChannel.open(directory.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends the pending records to the log.
+     */
+    private void flush() throws IOException {
+        if (pending.position() == 0) {
+            return;
+        }
+
+        pending.flip();
+        try (FileChannel lockChannel = lock()) {
+            final FileLock lock = lockChannel.lock();
+            try (FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Drop the incomplete record left by a process that crashed while writing
+                long position = channel.size() / RECORD_SIZE * RECORD_SIZE;
+                channel.truncate(position);
+                while (pending.hasRemaining()) {
+                    position += channel.write(pending, position);
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Writes the new records to the log now, for a process that may be killed before it is closed.
+     */
+    public synchronized void sync() {
+        if (directory == null) {
+            return;
+        }
+
+        try {
+            flush();
+        } catch (IOException e) {
+            Logger.error(Lang.getInstance().getCacheErrorMessage(directory), e);
+        }
+    }
+
+    /**
+     * Writes the newest valid record of each key and algorithm in the log to the file, in the order of the log.
+     */
+    private void writeNewest(ByteBuffer buffer, Path tempFile) throws IOException {
+        final int keep = keptRecords();
+        final int[] records = new int[keep];
+        final Set<Object> seen = new HashSet<>();
+        int count = 0;
+        for (int i = buffer.capacity() / RECORD_SIZE - 1; i >= 0 && count < keep; i--) {
+            final int offset = i * RECORD_SIZE;
+            if (isValid(crc, buffer, offset)
+                && seen.add(Map.entry(keyAt(buffer, offset), buffer.getLong(offset + ALGORITHM_OFFSET)))) {
+                records[count++] = i;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer out = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            for (int i = count - 1; i >= 0; i--) {
+                final int offset = records[i] * RECORD_SIZE;
+                out.put(buffer.duplicate().limit(offset + RECORD_SIZE).position(offset));
+                if (!out.hasRemaining() || i == 0) {
+                    out.flip();
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    out.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log with its newest records, keeping at most half of the maximum size.
+     */
+    synchronized void compact() throws IOException {
+        final Path logFile = directory.resolve(LOG_FILE);
+        try (FileChannel lockChannel = lock();
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                return; // Another process is writing the log, it will be compacted later
+            }
+
+            final MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+                final long size = channel.size() / RECORD_SIZE * RECORD_SIZE;
+                if (size <= maxSize) {
+                    return;
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE / RECORD_SIZE * RECORD_SIZE));
+            }
+
+            final Path tempFile = directory.resolve(LOG_FILE + ".tmp");
+            try {
+                writeNewest(buffer, tempFile);
+            } finally {
+                // The log cannot be replaced while it is mapped on Windows
+                IOUtils.unmap(buffer);
+            }
+            Files.move(tempFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Writes the new records, and compacts the log if it is too large.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (directory == null) {
+                return;
+            }
+
+            // The cache is not used after it is closed, and the log cannot be replaced while it is mapped on Windows
+            if (log instanceof MappedByteBuffer) {
+                IOUtils.unmap((MappedByteBuffer) log);
+            }
+
+            flush();
+            final Path logFile = directory.resolve(LOG_FILE);
+            if (Files.isRegularFile(logFile) && Files.size(logFile) > maxSize) {
+                compact();
+            }
+        } catch (IOException e) {
+            Logger.error(Lang.getInstance().getCacheErrorMessage(directory), e);
+        }
+    }
+}
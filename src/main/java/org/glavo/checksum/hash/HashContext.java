@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Incremental hashing context of a {@link Hasher}, created by {@link Hasher#newContext()}.
+ * <p>
+ * The context is fed with {@code update} and finished with one of the {@code digest} methods,
+ * which also reset the context, so it can be reused for the next message without allocation.
+ * The binary digest is the sequence of bytes encoded by the hex strings of {@link Hasher#hash}.
+ * <p>
+ * A context is not thread-safe. Off-heap memory (e.g. a {@code MemorySegment}) can be hashed through
+ * {@link #update(ByteBuffer)} with a view of the memory.
+ */
+public final class HashContext {
+    private final Hasher hasher;
+    private final HasherBase.Context context;
+
+    HashContext(Hasher hasher, HasherBase.Context context) {
+        this.hasher = hasher;
+        this.context = context;
+    }
+
+    HasherBase.Context context() {
+        return context;
+    }
+
+    public Hasher getHasher() {
+        return hasher;
+    }
+
+    /**
+     * Returns the length of the binary digest in bytes.
+     */
+    public int getDigestLength() {
+        return hasher.getDigestLength();
+    }
+
+    public void update(byte[] input) {
+        context.update(input, 0, input.length);
+    }
+
+    public void update(byte[] input, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, input.length);
+        context.update(input, offset, length);
+    }
+
+    /**
+     * Updates the context with the remaining bytes of the input, the position of the input will be equal to its limit.
+     */
+    public void update(ByteBuffer input) {
+        context.update(input);
+    }
+
+    public void digestInto(byte[] output) {
+        digestInto(output, 0);
+    }
+
+    /**
+     * Writes the binary digest into {@code output} starting at {@code offset}, then resets the context.
+     */
+    public void digestInto(byte[] output, int offset) {
+        Objects.checkFromIndexSize(offset, getDigestLength(), output.length);
+        try {
+            context.digest(output, offset);
+        } finally {
+            context.reset();
+        }
+    }
+
+    /**
+     * Returns the digest as a big-endian number, then resets the context.
+     *
+     * @throws UnsupportedOperationException if the digest is longer than 8 bytes
+     */
+    public long digestLong() {
+        if (getDigestLength() > Long.BYTES) {
+            throw new UnsupportedOperationException(hasher.getName() + " digest is longer than 8 bytes");
+        }
+        try {
+            return context.digest64();
+        } finally {
+            context.reset();
+        }
+    }
+
+    /**
+     * Returns the digest as a lower case hex string, then resets the context.
+     */
+    public String digestHex() {
+        try {
+            return context.digest();
+        } finally {
+            context.reset();
+        }
+    }
+
+    public void reset() {
+        context.reset();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.ChecksumThreadFactory;
+import org.glavo.checksum.util.IOUtils;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hashes files with two separate stages: I/O threads read the files into buffers taken from a bounded pool,
+ * and hash threads feed the buffers to the hash contexts of each file.
+ * <p>
+ * A file is read sequentially by one I/O thread, and its buffers are consumed in order by one hash thread at a time,
+ * so the number of outstanding reads and the number of hashing cores can be chosen independently.
+ * The I/O threads block when all buffers are in use, which bounds the memory used by read-ahead.
+ * <p>
+ * Work that must be done before a file is read (e.g. checking that it exists) can be run on the I/O threads with
+ * {@link #execute}, the files submitted by such a task are read by the thread that runs it.
+ */
+public final class HashPipeline implements AutoCloseable {
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * The pipeline whose I/O task is running on the current thread.
+     */
+    private static final ThreadLocal<HashPipeline> IO_STAGE = new ThreadLocal<>();
+
+    private final ExecutorService ioPool;
+    private final ExecutorService hashPool;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    public HashPipeline(int ioThreads, int hashThreads) {
+        final ChecksumThreadFactory threadFactory = new ChecksumThreadFactory();
+        this.ioPool = Executors.newFixedThreadPool(ioThreads, threadFactory);
+        this.hashPool = Executors.newFixedThreadPool(hashThreads, threadFactory);
+
+        final int bufferCount = 2 * (ioThreads + hashThreads);
+        this.buffers = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            buffers.add(IOUtils.allocateBuffer(IOUtils.DEFAULT_BUFFER_SIZE));
+        }
+    }
+
+    /**
+     * Hashes the file with each hasher, the result contains the hashes in the order of {@code hashers}.
+     */
+    public CompletableFuture<String[]> submit(Path file, Hasher[] hashers) {
+        final Job job = new Job(file, hashers);
+        if (IO_STAGE.get() == this) {
+            job.read();
+        } else {
+            ioPool.execute(job::read);
+        }
+        return job.result;
+    }
+
+    /**
+     * Runs the task on an I/O thread, the files it submits are read by that thread before it continues.
+     */
+    public void execute(Runnable task) {
+        ioPool.execute(() -> {
+            IO_STAGE.set(this);
+            try {
+                task.run();
+            } finally {
+                IO_STAGE.remove();
+            }
+        });
+    }
+
+    /**
+     * Waits for all submitted files to be hashed, then stops the threads.
+     */
+    @Override
+    public void close() {
+        try {
+            ioPool.shutdown();
+            if (!ioPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new AssertionError();
+            }
+
+            // all buffers have been queued, no more hash tasks will be scheduled by the I/O stage
+            hashPool.shutdown();
+            if (!hashPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new AssertionError();
+            }
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private final class Job {
+        final Path file;
+        final Hasher[] hashers;
+        final CompletableFuture<String[]> result = new CompletableFuture<>();
+
+        private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // Written by the I/O thread before END is queued
+        private volatile Throwable exception;
+
+        // Only accessed by the hash stage, which runs on one thread at a time for each job.
+        // The contexts are taken from the pools of the hashers, and given back when the job completes
+        private HasherBase.Context[] contexts;
+
+        Job(Path file, Hasher[] hashers) {
+            this.file = file;
+            this.hashers = hashers;
+        }
+
+        void read() {
+            try (SeekableByteChannel channel = Files.newByteChannel(file, Collections.emptySet(), IOUtils.EMPTY_FILE_ATTRIBUTES)) {
+                while (true) {
+                    final ByteBuffer buffer = buffers.take();
+                    buffer.clear();
+
+                    int read;
+                    try {
+                        do {
+                            read = channel.read(buffer);
+                        } while (read >= 0 && buffer.hasRemaining());
+                    } catch (Throwable e) {
+                        buffers.add(buffer);
+                        throw e;
+                    }
+
+                    if (buffer.position() > 0) {
+                        buffer.flip();
+                        enqueue(buffer);
+                    } else {
+                        buffers.add(buffer);
+                    }
+
+                    if (read < 0) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exception = new InterruptedIOException();
+            } catch (Throwable e) {
+                exception = e;
+            }
+            enqueue(END);
+        }
+
+        private void enqueue(ByteBuffer buffer) {
+            chunks.add(buffer);
+            if (scheduled.compareAndSet(false, true)) {
+                hashPool.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                ByteBuffer buffer;
+                while ((buffer = chunks.poll()) != null) {
+                    if (buffer == END) {
+                        complete();
+                    } else {
+                        update(buffer);
+                    }
+                }
+                scheduled.set(false);
+            } while (!chunks.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private HasherBase.Context[] contexts() {
+            if (contexts == null) {
+                contexts = new HasherBase.Context[hashers.length];
+                for (int i = 0; i < hashers.length; i++) {
+                    contexts[i] = hashers[i] instanceof HasherBase
+                            ? ((HasherBase) hashers[i]).acquireContext()
+                            : hashers[i].newContext().context();
+                }
+            }
+            return contexts;
+        }
+
+        /**
+         * Gives the contexts back to the pools, called once the result is completed, so they are not used again.
+         */
+        private void releaseContexts() {
+            if (contexts != null) {
+                for (int i = 0; i < hashers.length; i++) {
+                    if (hashers[i] instanceof HasherBase) {
+                        ((HasherBase) hashers[i]).releaseContext(contexts[i]);
+                    }
+                }
+                contexts = null;
+            }
+        }
+
+        private void update(ByteBuffer buffer) {
+            try {
+                if (!result.isDone()) {
+                    for (HasherBase.Context context : contexts()) {
+                        buffer.position(0);
+                        context.update(buffer);
+                    }
+                }
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                releaseContexts();
+            } finally {
+                buffers.add(buffer);
+            }
+        }
+
+        private void complete() {
+            if (result.isDone()) {
+                return;
+            }
+
+            try {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                    return;
+                }
+
+                final HasherBase.Context[] contexts = contexts();
+                final String[] hashes = new String[hashers.length];
+                for (int i = 0; i < hashers.length; i++) {
+                    hashes[i] = contexts[i].digest();
+                }
+                result.complete(hashes);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                releaseContexts();
+            }
+        }
+    }
+}
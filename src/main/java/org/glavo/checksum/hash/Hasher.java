@@ -19,6 +19,7 @@ package org.glavo.checksum.hash;
 import org.glavo.checksum.util.IOUtils;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -75,16 +76,23 @@ public abstract class Hasher {
                 return MessageDigestHasher.SHA_512;
             // java.util.zip.Checksum
             case "CRC32":
-                return new ZipChecksum32Hasher(java.util.zip.CRC32::new);
+                return new ZipChecksum32Hasher("CRC32", java.util.zip.CRC32::new, ChecksumCombiner.CRC32);
             case "CRC32C":
-                return new ZipChecksum32Hasher(java.util.zip.CRC32C::new);
+                return new ZipChecksum32Hasher("CRC32C", java.util.zip.CRC32C::new, ChecksumCombiner.CRC32C);
             case "ADLER32":
-                return new ZipChecksum32Hasher(java.util.zip.Adler32::new);
+                return new ZipChecksum32Hasher("Adler32", java.util.zip.Adler32::new, ChecksumCombiner.ADLER32);
+            // BLAKE3
+            case "BLAKE3":
+                return Blake3Hasher.DEFAULT;
             // xxHash
             case "XX64":
             case "XXH64":
             case "XXHASH64":
                 return XxHash64Hasher.DEFAULT;
+            case "XXH3":
+            case "XXH3-64":
+            case "XXH3_64":
+                return XxHash3_64Hasher.DEFAULT;
             case "XX128":
             case "XXH128":
             case "XXHASH128":
@@ -92,10 +100,15 @@ public abstract class Hasher {
             case "XXH3-128":
                 return XxHash3_128Hasher.DEFAULT;
             default:
+                if (name.toUpperCase(Locale.ROOT).endsWith("-TREE")) {
+                    Hasher leafHasher = ofName(name.substring(0, name.length() - "-TREE".length()));
+                    return leafHasher instanceof HasherBase ? new TreeHasher((HasherBase) leafHasher) : null;
+                }
+
                 try {
                     // Check if the algorithm is available
                     MessageDigest md = MessageDigest.getInstance(name);
-                    return new MessageDigestHasher(name, md.getDigestLength());
+                    return new MessageDigestHasher(name.toUpperCase(Locale.ROOT), md.getDigestLength());
                 } catch (NoSuchAlgorithmException ignored) {
                     return null;
                 }
@@ -127,27 +140,87 @@ public abstract class Hasher {
         algorithms.add("SHA3-384");
         algorithms.add("SHA3-512");
 
+        algorithms.add("BLAKE3");
+
         return algorithms;
     }
 
     public static List<String> getExperimentalAlgorithms() {
-        return List.of("XXH64", "XXH128");
+        return List.of("XXH64", "XXH3", "XXH128", "SHA256-TREE", "XXH128-TREE");
     }
 
+    private final String name;
     private final int hashStringLength;
 
-    Hasher(int digestLength) {
+    Hasher(String name, int digestLength) {
+        this.name = name;
         this.hashStringLength = digestLength << 1;
     }
 
+    public final String getName() {
+        return name;
+    }
+
+    public final int getDigestLength() {
+        return hashStringLength >> 1;
+    }
+
     public final boolean isAcceptChecksum(String checksum) {
         return checksum.length() == hashStringLength;
     }
 
+    /**
+     * Returns {@code true} if this algorithm usually hashes faster than the storage can read,
+     * so hashing a file is bound by the I/O rather than by the CPU.
+     */
+    public boolean isFast() {
+        return false;
+    }
+
+    /**
+     * Creates a new context for hashing a message incrementally.
+     */
+    public abstract HashContext newContext();
+
     public abstract String hash(SeekableByteChannel channel) throws IOException;
 
+    abstract String hashMapped(FileChannel channel, long size) throws IOException;
+
     public String hashFile(Path file) throws IOException {
+        return hashFile(file, IOMode.READ);
+    }
+
+    /**
+     * Hashes the file with several algorithms. The file is read only once for the algorithms based on {@link HasherBase},
+     * the others are computed separately. The hashers must be distinct.
+     */
+    public static String[] hashFile(Path file, IOMode mode, Hasher[] hashers) throws IOException {
+        if (hashers.length == 1) {
+            return new String[]{hashers[0].hashFile(file, mode)};
+        }
+
+        final String[] result = new String[hashers.length];
+        try (SeekableByteChannel channel = Files.newByteChannel(file, Collections.emptySet(), IOUtils.EMPTY_FILE_ATTRIBUTES)) {
+            HasherBase.hashAll(channel, mode, hashers, result);
+
+            for (int i = 0; i < hashers.length; i++) {
+                if (result[i] == null) {
+                    channel.position(0);
+                    result[i] = hashers[i].hash(channel);
+                }
+            }
+        }
+        return result;
+    }
+
+    public String hashFile(Path file, IOMode mode) throws IOException {
         try (SeekableByteChannel channel = Files.newByteChannel(file, Collections.emptySet(), IOUtils.EMPTY_FILE_ATTRIBUTES)) {
+            if (mode != IOMode.READ && channel instanceof FileChannel) {
+                final long size = channel.size();
+                if (mode.shouldMap(size)) {
+                    return hashMapped((FileChannel) channel, size);
+                }
+            }
             return hash(channel);
         }
     }
@@ -17,47 +17,248 @@
 package org.glavo.checksum.hash;
 
 import org.glavo.checksum.util.IOUtils;
+import org.glavo.checksum.util.Utils;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 abstract class HasherBase extends Hasher {
-    private final ThreadLocal<Context> threadLocalContext = ThreadLocal.withInitial(this::createContext);
+    /**
+     * Idle contexts. The contexts are pooled instead of being thread-local, so that a context (and its read buffer)
+     * is only kept for each concurrent use of the hasher, not for each thread that has ever used it.
+     */
+    private final Queue<Context> contextPool = new ConcurrentLinkedQueue<>();
 
-    HasherBase(int digestLength) {
-        super(digestLength);
+    HasherBase(String name, int digestLength) {
+        super(name, digestLength);
     }
 
     protected abstract Context createContext();
 
+    /**
+     * Takes an idle context from the pool, or creates a new one. It must be given back with {@link #releaseContext}.
+     */
+    final Context acquireContext() {
+        final Context context = contextPool.poll();
+        return context != null ? context : createContext();
+    }
+
+    final void releaseContext(Context context) {
+        context.reset();
+        contextPool.offer(context);
+    }
+
     @Override
-    public final String hash(SeekableByteChannel channel) throws IOException {
-        final Context context = threadLocalContext.get();
+    public HashContext newContext() {
+        return new HashContext(this, createContext());
+    }
+
+    @Override
+    public String hash(SeekableByteChannel channel) throws IOException {
+        final Context context = acquireContext();
 
-        final ByteBuffer buffer = context.buffer;
-        final byte[] array = buffer.array();
+        final ByteBuffer buffer = context.buffer();
 
-        int read;
-        do {
-            buffer.clear();
-            read = channel.read(buffer);
-            if (read > 0) {
-                context.update(array, 0, read);
+        try {
+            int read;
+            do {
+                buffer.clear();
+                read = channel.read(buffer);
+                if (read > 0) {
+                    buffer.flip();
+                    context.update(buffer);
+                }
+            } while (read != -1);
+            return context.digest();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    @Override
+    String hashMapped(FileChannel channel, long size) throws IOException {
+        final Context context = acquireContext();
+
+        try {
+            context.update(channel, 0, size, true);
+            return context.digest();
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    /**
+     * Feeds a single read of the channel to the contexts of all hashers which are instances of {@code HasherBase},
+     * and stores their results in {@code result}. The results of other hashers are left as {@code null}.
+     */
+    static void hashAll(SeekableByteChannel channel, IOMode mode, Hasher[] hashers, String[] result) throws IOException {
+        final Context[] contexts = new Context[hashers.length];
+        Context first = null;
+        for (int i = 0; i < hashers.length; i++) {
+            if (hashers[i] instanceof HasherBase) {
+                contexts[i] = ((HasherBase) hashers[i]).acquireContext();
+                if (first == null) {
+                    first = contexts[i];
+                }
             }
-        } while (read != -1);
-        String res = context.digest();
-        context.reset();
-        return res;
+        }
+
+        if (first == null) {
+            return;
+        }
+
+        try {
+            final long size;
+            if (mode != IOMode.READ && channel instanceof FileChannel && mode.shouldMap(size = channel.size())) {
+                final FileChannel fileChannel = (FileChannel) channel;
+                for (long position = 0; position < size; position += IOMode.MAPPING_WINDOW_SIZE) {
+                    final MappedByteBuffer window = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, IOMode.MAPPING_WINDOW_SIZE));
+                    try {
+                        for (Context context : contexts) {
+                            if (context != null) {
+                                window.position(0);
+                                context.update(window);
+                            }
+                        }
+                    } finally {
+                        IOUtils.unmap(window);
+                    }
+                }
+            } else {
+                final ByteBuffer buffer = first.buffer();
+                int read;
+                do {
+                    buffer.clear();
+                    read = channel.read(buffer);
+                    if (read > 0) {
+                        buffer.flip();
+                        for (Context context : contexts) {
+                            if (context != null) {
+                                buffer.position(0);
+                                context.update(buffer);
+                            }
+                        }
+                    }
+                } while (read != -1);
+            }
+
+            for (int i = 0; i < contexts.length; i++) {
+                if (contexts[i] != null) {
+                    result[i] = contexts[i].digest();
+                }
+            }
+        } finally {
+            for (int i = 0; i < contexts.length; i++) {
+                if (contexts[i] != null) {
+                    ((HasherBase) hashers[i]).releaseContext(contexts[i]);
+                }
+            }
+        }
     }
 
     protected static abstract class Context {
-        final ByteBuffer buffer = ByteBuffer.allocate(IOUtils.DEFAULT_BUFFER_SIZE);
+        private ByteBuffer buffer;
+        private ByteBuffer arrayView;
+
+        /**
+         * Returns the buffer used to read channels, it is allocated on first use
+         * so the contexts that are only fed by {@link HashContext} do not hold one.
+         */
+        final ByteBuffer buffer() {
+            ByteBuffer buffer = this.buffer;
+            if (buffer == null) {
+                this.buffer = buffer = IOUtils.allocateBuffer(IOUtils.DEFAULT_BUFFER_SIZE);
+            }
+            return buffer;
+        }
+
+        /**
+         * Returns a view of {@code len} bytes of the array starting at {@code offset}, for the contexts that only
+         * consume buffers. The view is reused while the caller feeds the same array, so it is not allocated per update.
+         */
+        final ByteBuffer arrayView(byte[] array, int offset, int len) {
+            ByteBuffer view = arrayView;
+            if (view == null || view.array() != array) {
+                arrayView = view = ByteBuffer.wrap(array);
+            }
+            view.limit(offset + len).position(offset);
+            return view;
+        }
 
         protected abstract void update(byte[] input, int offset, int len);
 
+        /**
+         * Updates the context with the remaining bytes of the input, the position of the input will be equal to its limit.
+         */
+        protected abstract void update(ByteBuffer input);
+
+        /**
+         * Updates the context with {@code length} bytes of the channel starting at {@code position},
+         * the position of the channel is not changed.
+         * Throws {@link EOFException} if the channel ends before the range, so the combined checksum is not used.
+         * <p>
+         * If {@code mapped} is {@code true}, the range is mapped in windows of at most {@link IOMode#MAPPING_WINDOW_SIZE},
+         * each window is unmapped as soon as it has been hashed.
+         */
+        final void update(FileChannel channel, long position, long length, boolean mapped) throws IOException {
+            if (mapped) {
+                for (long offset = 0; offset < length; offset += IOMode.MAPPING_WINDOW_SIZE) {
+                    final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position + offset,
+                            Math.min(length - offset, IOMode.MAPPING_WINDOW_SIZE));
+                    try {
+                        update(window);
+                    } finally {
+                        IOUtils.unmap(window);
+                    }
+                }
+                return;
+            }
+
+            final ByteBuffer buffer = buffer();
+            long offset = 0;
+            while (offset < length) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), length - offset));
+                final int read = channel.read(buffer, position + offset);
+                if (read < 0) {
+                    // The file has been truncated while it is hashed
+                    throw new EOFException();
+                }
+                buffer.flip();
+                update(buffer);
+                offset += read;
+            }
+        }
+
         protected abstract String digest();
 
+        /**
+         * Writes the binary form of the digest, i.e. the bytes encoded by {@link #digest()}, into {@code output}.
+         */
+        protected void digest(byte[] output, int offset) {
+            Utils.decodeHex(digest(), output, offset);
+        }
+
+        /**
+         * Returns the digest as a big-endian number, only supported by the algorithms whose digest is not longer than 8 bytes.
+         */
+        protected long digest64() {
+            throw new UnsupportedOperationException();
+        }
+
         protected abstract void reset();
+
+        static void putLong(byte[] output, int offset, long value) {
+            for (int i = 7; i >= 0; i--) {
+                output[offset + i] = (byte) value;
+                value >>>= 8;
+            }
+        }
     }
 }
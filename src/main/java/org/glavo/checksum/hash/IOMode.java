@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.glavo.checksum.hash;
+
+import java.util.Locale;
+
+public enum IOMode {
+    /**
+     * Read the file into a buffer through {@link java.nio.channels.SeekableByteChannel#read}.
+     */
+    READ,
+
+    /**
+     * Map the file into memory and hash the mapped region directly.
+     */
+    MMAP,
+
+    /**
+     * Map files whose size is at least {@link #MAPPING_THRESHOLD}, read the others.
+     */
+    AUTO;
+
+    static final long MAPPING_THRESHOLD = Long.getLong("org.glavo.checksum.mmap.threshold", 16L * 1024 * 1024);
+
+    static final int MAPPING_WINDOW_SIZE;
+
+    static {
+        int windowSize = Integer.getInteger("org.glavo.checksum.mmap.window", 64 * 1024 * 1024);
+        MAPPING_WINDOW_SIZE = windowSize > 0 ? windowSize : 64 * 1024 * 1024;
+    }
+
+    public static IOMode ofName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "read":
+                return READ;
+            case "mmap":
+                return MMAP;
+            case "auto":
+                return AUTO;
+            default:
+                return null;
+        }
+    }
+
+    boolean shouldMap(long size) {
+        switch (this) {
+            case MMAP:
+                return true;
+            case AUTO:
+                return size >= MAPPING_THRESHOLD;
+            default:
+                return false;
+        }
+    }
+}
@@ -18,6 +18,8 @@ package org.glavo.checksum.hash;
 
 import org.glavo.checksum.util.Utils;
 
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -33,7 +35,7 @@ final class MessageDigestHasher extends HasherBase {
     private final String algorithm;
 
     MessageDigestHasher(String algorithm, int digestLength) {
-        super(digestLength);
+        super(algorithm, digestLength);
         this.algorithm = algorithm;
     }
 
@@ -58,11 +60,25 @@ final class MessageDigestHasher extends HasherBase {
             md.update(input, offset, len);
         }
 
+        @Override
+        protected void update(ByteBuffer input) {
+            md.update(input);
+        }
+
         @Override
         protected String digest() {
             return Utils.encodeHex(md.digest());
         }
 
+        @Override
+        protected void digest(byte[] output, int offset) {
+            try {
+                md.digest(output, offset, md.getDigestLength());
+            } catch (DigestException e) {
+                throw new AssertionError(e.getMessage(), e);
+            }
+        }
+
         @Override
         protected void reset() {
             md.reset();
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.ChecksumThreadFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs an action for every index of a range, splitting the range into fork/join subtasks.
+ * <p>
+ * The subtasks are only forked when the caller is running in the checksum pool
+ * (see {@link ChecksumThreadFactory#inChecksumPool()}), so the work is spread over that pool,
+ * and any other caller (e.g. {@code -n 1}, or a library caller in the common pool) processes the range on its own thread.
+ */
+final class ParallelRanges {
+    private ParallelRanges() {
+    }
+
+    @FunctionalInterface
+    interface RangeAction {
+        void apply(int index) throws IOException;
+    }
+
+    static boolean isParallel() {
+        return ChecksumThreadFactory.inChecksumPool();
+    }
+
+    static void forEach(int count, RangeAction action) throws IOException {
+        if (count <= 1 || !isParallel()) {
+            for (int i = 0; i < count; i++) {
+                action.apply(i);
+            }
+            return;
+        }
+
+        try {
+            new Task(action, 0, count).invoke();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static final class Task extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final RangeAction action;
+        private final int from;
+        private final int to;
+
+        Task(RangeAction action, int from, int to) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                try {
+                    action.apply(from);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new Task(action, from, middle), new Task(action, middle, to));
+            }
+        }
+    }
+}
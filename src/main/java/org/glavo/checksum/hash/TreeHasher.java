@@ -0,0 +1,249 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Tree hash built on top of another algorithm {@code H}, named {@code <H>-TREE} (e.g. {@code SHA256-TREE}).
+ * <p>
+ * A file of {@code n} bytes is split into {@code k = max(1, ceil(n / L))} leaves of {@code L = 4 MiB} bytes
+ * (the last leaf may be shorter, and an empty file has one empty leaf). Then:
+ * <pre>
+ *   leaf[i] = H(file[i * L, min(n, (i + 1) * L)))
+ *   root    = H(leaf[0] || leaf[1] || ... || leaf[k - 1] || uint64_be(n) || uint32_be(L))
+ * </pre>
+ * where each {@code leaf[i]} is the binary form of the digest, i.e. the bytes encoded by its hex string.
+ * The checksum of the file is the hex string of {@code root}.
+ * <p>
+ * The leaves are independent, so they are hashed in parallel on the checksum pool.
+ */
+final class TreeHasher extends Hasher {
+    static final int LEAF_SIZE = 4 * 1024 * 1024;
+
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final HasherBase leafHasher;
+    private final int digestLength;
+
+    TreeHasher(HasherBase leafHasher) {
+        super(leafHasher.getName() + "-TREE", leafHasher.getDigestLength());
+        this.leafHasher = leafHasher;
+        this.digestLength = leafHasher.getDigestLength();
+    }
+
+    private static int leafCount(long size) {
+        return size == 0 ? 1 : Math.toIntExact((size - 1) / LEAF_SIZE + 1);
+    }
+
+    /**
+     * Hashes {@code size} bytes of the channel starting at {@code position}.
+     */
+    private String hashFileChannel(FileChannel channel, long position, long size, boolean mapped) throws IOException {
+        final int leafCount = leafCount(size);
+        final byte[] leaves = new byte[leafCount * digestLength + TRAILER_SIZE];
+
+        ParallelRanges.forEach(leafCount, index -> {
+            final long offset = (long) index * LEAF_SIZE;
+            final long length = Math.min(size - offset, LEAF_SIZE);
+            final HasherBase.Context context = leafHasher.acquireContext();
+            try {
+                context.update(channel, position + offset, length, mapped);
+                context.digest(leaves, index * digestLength);
+            } finally {
+                leafHasher.releaseContext(context);
+            }
+        });
+
+        return root(leaves, leafCount, size);
+    }
+
+    /**
+     * Writes the trailer after the leaf digests, and returns the length of the input of the root.
+     */
+    private int putTrailer(byte[] leaves, int leafCount, long size) {
+        final ByteBuffer trailer = ByteBuffer.wrap(leaves, leafCount * digestLength, TRAILER_SIZE);
+        trailer.putLong(size);
+        trailer.putInt(LEAF_SIZE);
+        return leafCount * digestLength + TRAILER_SIZE;
+    }
+
+    private String root(byte[] leaves, int leafCount, long size) {
+        final int length = putTrailer(leaves, leafCount, size);
+
+        final HasherBase.Context context = leafHasher.acquireContext();
+        try {
+            context.update(leaves, 0, length);
+            return context.digest();
+        } finally {
+            leafHasher.releaseContext(context);
+        }
+    }
+
+    @Override
+    public String hash(SeekableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel && ParallelRanges.isParallel()) {
+            final long position = channel.position();
+            return hashFileChannel((FileChannel) channel, position, channel.size() - position, false);
+        }
+
+        final HasherBase.Context context = leafHasher.acquireContext();
+        final ByteBuffer buffer = context.buffer();
+
+        byte[] leaves = new byte[16 * digestLength + TRAILER_SIZE];
+        int leafCount = 0;
+        long size = 0;
+
+        try {
+            boolean eof = false;
+            do {
+                long leafLength = 0;
+                while (leafLength < LEAF_SIZE) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), LEAF_SIZE - leafLength));
+                    final int read = channel.read(buffer);
+                    if (read < 0) {
+                        eof = true;
+                        break;
+                    }
+                    buffer.flip();
+                    context.update(buffer);
+                    leafLength += read;
+                }
+
+                if (leafLength > 0 || leafCount == 0) {
+                    if ((leafCount + 1) * digestLength + TRAILER_SIZE > leaves.length) {
+                        leaves = Arrays.copyOf(leaves, leaves.length * 2);
+                    }
+                    context.digest(leaves, leafCount * digestLength);
+                    leafCount++;
+                    size += leafLength;
+                }
+                context.reset();
+            } while (!eof);
+        } finally {
+            leafHasher.releaseContext(context);
+        }
+
+        return root(leaves, leafCount, size);
+    }
+
+    @Override
+    String hashMapped(FileChannel channel, long size) throws IOException {
+        return hashFileChannel(channel, 0, size, true);
+    }
+
+    @Override
+    public boolean isFast() {
+        return leafHasher.isFast();
+    }
+
+    @Override
+    public HashContext newContext() {
+        return new HashContext(this, new Context());
+    }
+
+    /**
+     * Computes the tree hash of a stream, the leaves are hashed one after another with a context of the leaf algorithm.
+     * A leaf is only completed when more input arrives, so a stream whose size is a multiple of the leaf size
+     * does not end with an empty leaf.
+     */
+    private final class Context extends HasherBase.Context {
+        private final HasherBase.Context leaf = leafHasher.createContext();
+        private long leafLength;
+
+        private byte[] leaves = new byte[16 * digestLength + TRAILER_SIZE];
+        private int leafCount;
+        private long size;
+
+        private void completeLeaf() {
+            if ((leafCount + 1) * digestLength + TRAILER_SIZE > leaves.length) {
+                leaves = Arrays.copyOf(leaves, leaves.length * 2);
+            }
+            leaf.digest(leaves, leafCount * digestLength);
+            leaf.reset();
+            leafCount++;
+            leafLength = 0;
+        }
+
+        @Override
+        protected void update(byte[] input, int offset, int len) {
+            while (len > 0) {
+                if (leafLength == LEAF_SIZE) {
+                    completeLeaf();
+                }
+                final int n = (int) Math.min(len, LEAF_SIZE - leafLength);
+                leaf.update(input, offset, n);
+                offset += n;
+                len -= n;
+                leafLength += n;
+                size += n;
+            }
+        }
+
+        @Override
+        protected void update(ByteBuffer input) {
+            final int limit = input.limit();
+            while (input.hasRemaining()) {
+                if (leafLength == LEAF_SIZE) {
+                    completeLeaf();
+                }
+                final int n = (int) Math.min(input.remaining(), LEAF_SIZE - leafLength);
+                input.limit(input.position() + n);
+                leaf.update(input);
+                input.limit(limit);
+                leafLength += n;
+                size += n;
+            }
+        }
+
+        /**
+         * Completes the last leaf and feeds the input of the root to the leaf context.
+         */
+        private void updateRoot() {
+            if (leafLength > 0 || leafCount == 0) {
+                completeLeaf();
+            }
+            leaf.update(leaves, 0, putTrailer(leaves, leafCount, size));
+        }
+
+        @Override
+        protected String digest() {
+            updateRoot();
+            return leaf.digest();
+        }
+
+        @Override
+        protected void digest(byte[] output, int offset) {
+            updateRoot();
+            leaf.digest(output, offset);
+        }
+
+        @Override
+        protected void reset() {
+            leaf.reset();
+            leafLength = 0;
+            leafCount = 0;
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Locale;
+
+/**
+ * Reads and writes the hashes of a file in its extended attributes, so the hashes follow the file when it is renamed
+ * or moved within a file system.
+ * <p>
+ * The hash of each algorithm is stored in the attribute {@code user.gchecksum.<algorithm>} as
+ * {@code <size> <mtime> <hash>}, the modification time is in nanoseconds since the epoch.
+ * The status change time is not recorded, since writing the attribute changes it.
+ */
+final class XattrHashes {
+    private static final String PREFIX = "gchecksum.";
+
+    /**
+     * Longer values were not written by gchecksum, they are ignored.
+     */
+    private static final int MAX_VALUE_LENGTH = 1024;
+
+    private XattrHashes() {
+    }
+
+    /**
+     * Returns the name of the attribute without the {@code user.} namespace,
+     * which is added by {@link UserDefinedFileAttributeView}.
+     */
+    static String nameOf(Hasher hasher) {
+        return PREFIX + hasher.getName().toLowerCase(Locale.ROOT).replace('/', '_');
+    }
+
+    static String format(long size, long mtime, String hash) {
+        return size + " " + mtime + " " + hash;
+    }
+
+    /**
+     * Returns the hash of the value if it was recorded with the size and modification time, or {@code null}.
+     */
+    static String parse(String value, long size, long mtime, Hasher hasher) {
+        final int i1 = value.indexOf(' ');
+        final int i2 = i1 < 0 ? -1 : value.indexOf(' ', i1 + 1);
+        if (i2 < 0) {
+            return null;
+        }
+
+        try {
+            if (Long.parseLong(value.substring(0, i1)) != size || Long.parseLong(value.substring(i1 + 1, i2)) != mtime) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        final String hash = value.substring(i2 + 1);
+        if (!hasher.isAcceptChecksum(hash)) {
+            return null;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.digit(hash.charAt(i), 16) < 0) {
+                return null;
+            }
+        }
+        return hash;
+    }
+
+    private static UserDefinedFileAttributeView viewOf(Path file) {
+        return Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+    }
+
+    private static String read(UserDefinedFileAttributeView view, String name) {
+        try {
+            final int size = view.size(name);
+            if (size <= 0 || size > MAX_VALUE_LENGTH) {
+                return null;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(size);
+            view.read(name, buffer);
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return null; // The attribute does not exist, or the file system does not support it
+        }
+    }
+
+    /**
+     * Returns the recorded hashes of each algorithm, or {@code null} unless the hashes of all algorithms were recorded
+     * with the size and modification time.
+     */
+    static String[] read(Path file, Hasher[] hashers, long size, long mtime) {
+        final UserDefinedFileAttributeView view = viewOf(file);
+        if (view == null) {
+            return null;
+        }
+
+        final String[] hashes = new String[hashers.length];
+        for (int i = 0; i < hashers.length; i++) {
+            final String value = read(view, nameOf(hashers[i]));
+            if (value == null || (hashes[i] = parse(value, size, mtime, hashers[i])) == null) {
+                return null;
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Records the hashes of each algorithm, the attributes that already hold the same values are not written again.
+     * Files that cannot be written are skipped silently.
+     */
+    static void write(Path file, Hasher[] hashers, String[] hashes, long size, long mtime) {
+        final UserDefinedFileAttributeView view = viewOf(file);
+        if (view == null) {
+            return;
+        }
+
+        for (int i = 0; i < hashers.length; i++) {
+            final String name = nameOf(hashers[i]);
+            final String value = format(size, mtime, hashes[i]);
+            if (value.equals(read(view, name))) {
+                continue;
+            }
+
+            try {
+                view.write(name, ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII)));
+            } catch (IOException | UnsupportedOperationException | SecurityException e) {
+                return;
+            }
+        }
+    }
+}
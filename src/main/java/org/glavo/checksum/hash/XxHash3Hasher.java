@@ -16,25 +16,15 @@
 
 package org.glavo.checksum.hash;
 
-import org.glavo.checksum.util.IOUtils;
 import org.glavo.checksum.util.LittleEndianByteArray;
 import org.glavo.checksum.util.Maths;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
-import java.nio.file.OpenOption;
-import java.nio.file.StandardOpenOption;
-import java.nio.file.attribute.FileAttribute;
-import java.util.Collections;
-import java.util.Set;
 
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 
 // The implementation references https://github.com/OpenHFT/Zero-Allocation-Hashing
-abstract class XxHash3Hasher extends Hasher {
-
-    private static final ThreadLocal<ByteBuffer> threadLocalBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(IOUtils.DEFAULT_BUFFER_SIZE));
+abstract class XxHash3Hasher extends HasherBase {
 
     /*! Pseudorandom secret taken directly from FARSH. */
     protected static final byte[] XXH3_kSecret = {
@@ -64,8 +54,15 @@ abstract class XxHash3Hasher extends Hasher {
     protected static final long XXH_PRIME64_5 = 0x27D4EB2F165667C5L;   /*!< 0b0010011111010100111010110010111100010110010101100110011111000101 */
 
     // only support fixed size secret
-    protected static final long nbStripesPerBlock = (192 - 64) / 8;
-    protected static final long block_len = 64 * nbStripesPerBlock;
+    protected static final int STRIPE_LEN = 64;
+    protected static final int SECRET_SIZE = 192;
+    protected static final int SECRET_LIMIT = SECRET_SIZE - STRIPE_LEN;
+    protected static final int nbStripesPerBlock = SECRET_LIMIT / 8;
+
+    protected static final int MIDSIZE_MAX = 240;
+
+    private static final int INTERNAL_BUFFER_SIZE = 256;
+    private static final int INTERNAL_BUFFER_STRIPES = INTERNAL_BUFFER_SIZE / STRIPE_LEN;
 
     protected static long XXH64_avalanche(long h64) {
         h64 ^= h64 >>> 33;
@@ -125,14 +122,20 @@ abstract class XxHash3Hasher extends Hasher {
         }
     }
 
-    private static final Set<OpenOption> OPEN_OPTIONS = Collections.singleton(StandardOpenOption.READ);
-    private static final FileAttribute<?>[] NO_ATTRIBUTES = new FileAttribute<?>[0];
+    // XXH3_mergeAccs
+    protected static long XXH3_mergeAccs(final long[] acc, final byte[] secret, final int offSec, final long start) {
+        return XXH3_avalanche(start
+                + XXH3_mix2Accs(acc[0], acc[1], secret, offSec)
+                + XXH3_mix2Accs(acc[2], acc[3], secret, offSec + 16)
+                + XXH3_mix2Accs(acc[4], acc[5], secret, offSec + 16 * 2)
+                + XXH3_mix2Accs(acc[6], acc[7], secret, offSec + 16 * 3));
+    }
 
     protected final long seed;
     protected final byte[] secret;
 
-    XxHash3Hasher(int digestLength, long seed) {
-        super(digestLength);
+    XxHash3Hasher(String name, int digestLength, long seed) {
+        super(name, digestLength);
         this.seed = seed;
 
         if (seed == 0L) {
@@ -143,19 +146,150 @@ abstract class XxHash3Hasher extends Hasher {
         }
     }
 
-    protected abstract String hashImpl(SeekableByteChannel channel, ByteBuffer buffer, long length) throws IOException;
-
     @Override
-    public final String hash(SeekableByteChannel channel) throws IOException {
-        final ByteBuffer buffer = threadLocalBuffer.get();
+    public boolean isFast() {
+        return true;
+    }
+
+    // XXH3_state_t
+    protected static abstract class Context extends HasherBase.Context {
+        protected final long seed;
+        protected final byte[] secret;
+
+        private final long[] acc = new long[8];
+        private final long[] digestAcc = new long[8];
+        private int nbStripesSoFar;
+
+        protected long totalLength;
+
+        // Inputs not larger than MIDSIZE_MAX are hashed from this buffer
+        protected final byte[] buffer = new byte[INTERNAL_BUFFER_SIZE];
+        private final ByteBuffer bufferView = ByteBuffer.wrap(buffer);
+        protected int bufferedSize;
+
+        private final byte[] lastStripe = new byte[STRIPE_LEN];
+        private final ByteBuffer lastStripeView = ByteBuffer.wrap(lastStripe);
+
+        Context(long seed, byte[] secret) {
+            this.seed = seed;
+            this.secret = secret;
+            reset();
+        }
+
+        // XXH3_consumeStripes
+        private int consumeStripes(final long[] acc, final ByteBuffer input, int offset, int nbStripes) {
+            int secretOffset = nbStripesSoFar * 8;
+            if (nbStripes >= nbStripesPerBlock - nbStripesSoFar) {
+                int nbStripesThisIter = nbStripesPerBlock - nbStripesSoFar;
+                do {
+                    XxHash3Kernel.accumulate(acc, input, offset, secret, secretOffset, nbStripesThisIter);
+                    XxHash3Kernel.scramble(acc, secret);
+                    offset += nbStripesThisIter * STRIPE_LEN;
+                    nbStripes -= nbStripesThisIter;
+
+                    nbStripesThisIter = nbStripesPerBlock;
+                    secretOffset = 0;
+                } while (nbStripes >= nbStripesPerBlock);
+                nbStripesSoFar = 0;
+            }
+
+            if (nbStripes > 0) {
+                XxHash3Kernel.accumulate(acc, input, offset, secret, secretOffset, nbStripes);
+                offset += nbStripes * STRIPE_LEN;
+                nbStripesSoFar += nbStripes;
+            }
+            return offset;
+        }
+
+        @Override
+        protected void update(byte[] input, int offset, int len) {
+            update(arrayView(input, offset, len));
+        }
+
+        @Override
+        protected void update(ByteBuffer input) {
+            int offset = input.position();
+            final int limit = input.limit();
+            final int len = limit - offset;
+
+            totalLength += len;
+
+            if (len <= INTERNAL_BUFFER_SIZE - bufferedSize) {
+                input.get(buffer, bufferedSize, len);
+                bufferedSize += len;
+                return;
+            }
+
+            // total input is now > INTERNAL_BUFFER_SIZE
+            if (bufferedSize > 0) {
+                final int loadSize = INTERNAL_BUFFER_SIZE - bufferedSize;
+                input.get(buffer, bufferedSize, loadSize);
+                offset += loadSize;
+                consumeStripes(acc, bufferView, 0, INTERNAL_BUFFER_STRIPES);
+                bufferedSize = 0;
+            }
+
+            if (limit - offset > INTERNAL_BUFFER_SIZE) {
+                final int nbStripes = (limit - 1 - offset) / STRIPE_LEN;
+                offset = consumeStripes(acc, input, offset, nbStripes);
 
-        long length = channel.size();
+                // keep the last stripe, it may be needed by the digest
+                input.position(offset - STRIPE_LEN);
+                input.get(buffer, INTERNAL_BUFFER_SIZE - STRIPE_LEN, STRIPE_LEN);
+            }
 
-        buffer.position(0);
-        buffer.limit((int) Math.min(length, IOUtils.DEFAULT_BUFFER_SIZE));
+            // Some remaining input (always): buffer it
+            input.position(offset);
+            bufferedSize = limit - offset;
+            input.get(buffer, 0, bufferedSize);
+        }
+
+        /**
+         * Returns the accumulators of the long input ({@code totalLength > MIDSIZE_MAX}).
+         * This method does not change the state of the context.
+         */
+        // XXH3_digest_long
+        protected final long[] digestLong() {
+            final long[] acc = this.digestAcc;
+            System.arraycopy(this.acc, 0, acc, 0, 8);
+
+            final ByteBuffer lastStripe;
+            final int lastStripeOffset;
+            if (bufferedSize >= STRIPE_LEN) {
+                final int nbStripes = (bufferedSize - 1) / STRIPE_LEN;
+                final int nbStripesSoFar = this.nbStripesSoFar;
+                consumeStripes(acc, bufferView, 0, nbStripes);
+                this.nbStripesSoFar = nbStripesSoFar;
+
+                lastStripe = bufferView;
+                lastStripeOffset = bufferedSize - STRIPE_LEN;
+            } else {
+                final int catchupSize = STRIPE_LEN - bufferedSize;
+                System.arraycopy(buffer, INTERNAL_BUFFER_SIZE - catchupSize, this.lastStripe, 0, catchupSize);
+                System.arraycopy(buffer, 0, this.lastStripe, catchupSize, bufferedSize);
 
-        IOUtils.readFully(channel, buffer);
+                lastStripe = lastStripeView;
+                lastStripeOffset = 0;
+            }
 
-        return hashImpl(channel, buffer, length);
+            XxHash3Kernel.accumulate(acc, lastStripe, lastStripeOffset, secret, SECRET_LIMIT - 7, 1);
+            return acc;
+        }
+
+        @Override
+        protected void reset() {
+            acc[0] = XXH_PRIME32_3;
+            acc[1] = XXH_PRIME64_1;
+            acc[2] = XXH_PRIME64_2;
+            acc[3] = XXH_PRIME64_3;
+            acc[4] = XXH_PRIME64_4;
+            acc[5] = XXH_PRIME32_2;
+            acc[6] = XXH_PRIME64_5;
+            acc[7] = XXH_PRIME32_1;
+
+            nbStripesSoFar = 0;
+            totalLength = 0L;
+            bufferedSize = 0;
+        }
     }
 }
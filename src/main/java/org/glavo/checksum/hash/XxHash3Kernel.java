@@ -0,0 +1,39 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The XXH3 accumulate and scramble steps.
+ * <p>
+ * This class is replaced by {@code META-INF/versions/17/org/glavo/checksum/hash/XxHash3Kernel.class},
+ * which uses the Vector API when the {@code jdk.incubator.vector} module is available.
+ */
+final class XxHash3Kernel {
+    private XxHash3Kernel() {
+    }
+
+    static void accumulate(long[] acc, ByteBuffer input, int offset, byte[] secret, int secretOffset, int nbStripes) {
+        XxHash3ScalarKernel.accumulate(acc, input, offset, secret, secretOffset, nbStripes);
+    }
+
+    static void scramble(long[] acc, byte[] secret) {
+        XxHash3ScalarKernel.scramble(acc, secret);
+    }
+}
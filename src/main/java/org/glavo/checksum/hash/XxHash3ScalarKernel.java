@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.LittleEndianByteArray;
+
+import java.nio.ByteBuffer;
+
+import static org.glavo.checksum.hash.XxHash3Hasher.*;
+
+final class XxHash3ScalarKernel {
+    private XxHash3ScalarKernel() {
+    }
+
+    // XXH3_accumulate
+    static void accumulate(final long[] acc, final ByteBuffer input, final int offset,
+                           final byte[] secret, final int secretOffset, final int nbStripes) {
+        long acc_0 = acc[0];
+        long acc_1 = acc[1];
+        long acc_2 = acc[2];
+        long acc_3 = acc[3];
+        long acc_4 = acc[4];
+        long acc_5 = acc[5];
+        long acc_6 = acc[6];
+        long acc_7 = acc[7];
+
+        for (int s = 0; s < nbStripes; s++) {
+            // XXH3_accumulate_512
+            final int offStripe = offset + s * STRIPE_LEN;
+            final int offSec = secretOffset + s * 8;
+            {
+                final long data_val_0 = LittleEndianByteArray.getLong(input, offStripe + 8 * 0);
+                final long data_val_1 = LittleEndianByteArray.getLong(input, offStripe + 8 * 1);
+                final long data_key_0 = data_val_0 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 0);
+                final long data_key_1 = data_val_1 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 1);
+                /* swap adjacent lanes */
+                acc_0 += data_val_1 + (0xFFFFFFFFL & data_key_0) * (data_key_0 >>> 32);
+                acc_1 += data_val_0 + (0xFFFFFFFFL & data_key_1) * (data_key_1 >>> 32);
+            }
+            {
+                final long data_val_0 = LittleEndianByteArray.getLong(input, offStripe + 8 * 2);
+                final long data_val_1 = LittleEndianByteArray.getLong(input, offStripe + 8 * 3);
+                final long data_key_0 = data_val_0 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 2);
+                final long data_key_1 = data_val_1 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 3);
+                /* swap adjacent lanes */
+                acc_2 += data_val_1 + (0xFFFFFFFFL & data_key_0) * (data_key_0 >>> 32);
+                acc_3 += data_val_0 + (0xFFFFFFFFL & data_key_1) * (data_key_1 >>> 32);
+            }
+            {
+                final long data_val_0 = LittleEndianByteArray.getLong(input, offStripe + 8 * 4);
+                final long data_val_1 = LittleEndianByteArray.getLong(input, offStripe + 8 * 5);
+                final long data_key_0 = data_val_0 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 4);
+                final long data_key_1 = data_val_1 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 5);
+                /* swap adjacent lanes */
+                acc_4 += data_val_1 + (0xFFFFFFFFL & data_key_0) * (data_key_0 >>> 32);
+                acc_5 += data_val_0 + (0xFFFFFFFFL & data_key_1) * (data_key_1 >>> 32);
+            }
+            {
+                final long data_val_0 = LittleEndianByteArray.getLong(input, offStripe + 8 * 6);
+                final long data_val_1 = LittleEndianByteArray.getLong(input, offStripe + 8 * 7);
+                final long data_key_0 = data_val_0 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 6);
+                final long data_key_1 = data_val_1 ^ LittleEndianByteArray.getLong(secret, offSec + 8 * 7);
+                /* swap adjacent lanes */
+                acc_6 += data_val_1 + (0xFFFFFFFFL & data_key_0) * (data_key_0 >>> 32);
+                acc_7 += data_val_0 + (0xFFFFFFFFL & data_key_1) * (data_key_1 >>> 32);
+            }
+        }
+
+        acc[0] = acc_0;
+        acc[1] = acc_1;
+        acc[2] = acc_2;
+        acc[3] = acc_3;
+        acc[4] = acc_4;
+        acc[5] = acc_5;
+        acc[6] = acc_6;
+        acc[7] = acc_7;
+    }
+
+    // XXH3_scrambleAcc_scalar
+    static void scramble(final long[] acc, final byte[] secret) {
+        final int offSec = SECRET_LIMIT;
+        for (int i = 0; i < 8; i++) {
+            final long acc_i = acc[i];
+            acc[i] = (acc_i ^ (acc_i >>> 47) ^ LittleEndianByteArray.getLong(secret, offSec + 8 * i)) * XXH_PRIME32_1;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.Maths;
+import org.glavo.checksum.util.Utils;
+
+import static org.glavo.checksum.util.LittleEndianByteArray.*;
+
+final class XxHash3_64Hasher extends XxHash3Hasher {
+
+    static final XxHash3_64Hasher DEFAULT = new XxHash3_64Hasher(0L);
+
+    XxHash3_64Hasher(long seed) {
+        super("XXH3", 8, seed);
+    }
+
+    @Override
+    protected Context createContext() {
+        return new Context(seed, secret);
+    }
+
+    protected static final class Context extends XxHash3Hasher.Context {
+        Context(long seed, byte[] secret) {
+            super(seed, secret);
+        }
+
+        @Override
+        protected String digest() {
+            return Utils.encodeHex(digest64());
+        }
+
+        @Override
+        protected void digest(byte[] output, int offset) {
+            putLong(output, offset, digest64());
+        }
+
+        @Override
+        protected long digest64() {
+            final long length = totalLength;
+
+            if (length > MIDSIZE_MAX) {
+                // XXH3_hashLong_64b
+                return XXH3_mergeAccs(digestLong(), secret, 11, length * XXH_PRIME64_1);
+            }
+
+            final byte[] array = buffer;
+
+            if (length <= 16) {
+                // XXH3_len_0to16_64b
+                if (length > 8) {
+                    // XXH3_len_9to16_64b
+                    final long bitflip1 = (getLong(XXH3_kSecret, 24) ^ getLong(XXH3_kSecret, 32)) + seed;
+                    final long bitflip2 = (getLong(XXH3_kSecret, 40) ^ getLong(XXH3_kSecret, 48)) - seed;
+                    final long input_lo = getLong(array, 0) ^ bitflip1;
+                    final long input_hi = getLong(array, length - 8) ^ bitflip2;
+                    final long acc = length + Long.reverseBytes(input_lo) + input_hi
+                            + Maths.unsignedLongMulXorFold(input_lo, input_hi);
+                    return XXH3_avalanche(acc);
+                }
+                if (length >= 4) {
+                    // XXH3_len_4to8_64b
+                    final long s = seed ^ Long.reverseBytes(seed & 0xffffffffL);
+                    final long input1 = getUnsignedInt(array, 0);
+                    final long input2 = getUnsignedInt(array, length - 4);
+                    final long bitflip = (getLong(XXH3_kSecret, 8) ^ getLong(XXH3_kSecret, 16)) - s;
+                    final long keyed = (input2 + (input1 << 32)) ^ bitflip;
+                    return XXH3_rrmxmx(keyed, length);
+                }
+                if (length != 0) {
+                    // XXH3_len_1to3_64b
+                    final int c1 = getUnsignedByte(array, 0);
+                    final int c2 = getByte(array, length >> 1); // high 3 bytes will be shifted
+                    final int c3 = getUnsignedByte(array, length - 1);
+                    final int combined = (c1 << 16) | (c2 << 24) | c3 | ((int) length << 8);
+                    final long bitflip = Integer.toUnsignedLong(getInt(XXH3_kSecret, 0) ^ getInt(XXH3_kSecret, 4)) + seed;
+                    return XXH64_avalanche(Integer.toUnsignedLong(combined) ^ bitflip);
+                }
+                return XXH64_avalanche(seed ^ getLong(XXH3_kSecret, 56) ^ getLong(XXH3_kSecret, 64));
+            }
+
+            if (length <= 128) {
+                // XXH3_len_17to128_64b
+                long acc = length * XXH_PRIME64_1;
+                if (length > 32) {
+                    if (length > 64) {
+                        if (length > 96) {
+                            acc += XXH3_mix16B(seed, array, 48, 96);
+                            acc += XXH3_mix16B(seed, array, length - 64, 112);
+                        }
+                        acc += XXH3_mix16B(seed, array, 32, 64);
+                        acc += XXH3_mix16B(seed, array, length - 48, 80);
+                    }
+                    acc += XXH3_mix16B(seed, array, 16, 32);
+                    acc += XXH3_mix16B(seed, array, length - 32, 48);
+                }
+                acc += XXH3_mix16B(seed, array, 0, 0);
+                acc += XXH3_mix16B(seed, array, length - 16, 16);
+                return XXH3_avalanche(acc);
+            }
+
+            // XXH3_len_129to240_64b
+            final int nbRounds = (int) length / 16;
+            long acc = length * XXH_PRIME64_1;
+            int i = 0;
+            for (; i < 8; ++i) {
+                acc += XXH3_mix16B(seed, array, 16 * i, 16 * i);
+            }
+            acc = XXH3_avalanche(acc);
+
+            for (; i < nbRounds; ++i) {
+                acc += XXH3_mix16B(seed, array, 16 * i, 16 * (i - 8) + 3);
+            }
+
+            /* last bytes */
+            acc += XXH3_mix16B(seed, array, length - 16, 136 - 17);
+            return XXH3_avalanche(acc);
+        }
+    }
+}
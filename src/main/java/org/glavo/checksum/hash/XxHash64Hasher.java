@@ -16,17 +16,15 @@
 
 package org.glavo.checksum.hash;
 
-import org.glavo.checksum.util.IOUtils;
 import org.glavo.checksum.util.LittleEndianByteArray;
 import org.glavo.checksum.util.Utils;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Paths;
 
 // The implementation references https://github.com/OpenHFT/Zero-Allocation-Hashing
-final class XxHash64Hasher extends Hasher {
+final class XxHash64Hasher extends HasherBase {
     // Primes if treated as unsigned
     private static final long P1 = 0x9e3779b185ebca87L;
     private static final long P2 = 0xc2b2ae3d27d4eb4fL;
@@ -34,129 +32,35 @@ final class XxHash64Hasher extends Hasher {
     private static final long P4 = 0x85ebca77c2b2ae63L;
     private static final long P5 = 0x27d4eb2f165667c5L;
 
-    private static final ThreadLocal<ByteBuffer> threadLocalBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocate(IOUtils.DEFAULT_BUFFER_SIZE));
-
     static final XxHash64Hasher DEFAULT = new XxHash64Hasher(0L);
 
     private final long seed;
 
     XxHash64Hasher(long seed) {
-        super(8);
+        super("XXH64", 8);
         this.seed = seed;
     }
 
     @Override
-    public String hash(SeekableByteChannel channel) throws IOException {
-        final ByteBuffer buffer = threadLocalBuffer.get();
-        final byte[] array = buffer.array();
-
-        long v1 = seed + P1 + P2;
-        long v2 = seed + P2;
-        long v3 = seed;
-        long v4 = seed - P1;
-
-        long count = 0L;
-        long remaining = 0L;
-        int offset = 0;
-
-        int read;
-            do {
-                buffer.clear();
-                read = IOUtils.readAsPossible(channel, buffer);
-
-                if (read <= 0) {
-                    break;
-                }
-
-                count += read;
-                remaining += read;
-
-                offset = 0;
-                while (remaining >= 32) {
-                    v1 += LittleEndianByteArray.getLong(array, offset) * P2;
-                    v1 = Long.rotateLeft(v1, 31);
-                    v1 *= P1;
-
-                    v2 += LittleEndianByteArray.getLong(array, offset + 8) * P2;
-                    v2 = Long.rotateLeft(v2, 31);
-                    v2 *= P1;
-
-                    v3 += LittleEndianByteArray.getLong(array, offset + 16) * P2;
-                    v3 = Long.rotateLeft(v3, 31);
-                    v3 *= P1;
-
-                    v4 += LittleEndianByteArray.getLong(array, offset + 24) * P2;
-                    v4 = Long.rotateLeft(v4, 31);
-                    v4 *= P1;
-
-                    offset += 32;
-                    remaining -= 32;
-                }
-            } while (read == IOUtils.DEFAULT_BUFFER_SIZE);
-
-        long hash;
-
-        if (remaining < count) {
-            hash = Long.rotateLeft(v1, 1)
-                    + Long.rotateLeft(v2, 7)
-                    + Long.rotateLeft(v3, 12)
-                    + Long.rotateLeft(v4, 18);
-
-            v1 *= P2;
-            v1 = Long.rotateLeft(v1, 31);
-            v1 *= P1;
-            hash ^= v1;
-            hash = hash * P1 + P4;
-
-            v2 *= P2;
-            v2 = Long.rotateLeft(v2, 31);
-            v2 *= P1;
-            hash ^= v2;
-            hash = hash * P1 + P4;
-
-            v3 *= P2;
-            v3 = Long.rotateLeft(v3, 31);
-            v3 *= P1;
-            hash ^= v3;
-            hash = hash * P1 + P4;
-
-            v4 *= P2;
-            v4 = Long.rotateLeft(v4, 31);
-            v4 *= P1;
-            hash ^= v4;
-            hash = hash * P1 + P4;
-        } else {
-            hash = seed + P5;
-        }
-
-        hash += count;
-
-        while (remaining >= 8) {
-            long k1 = LittleEndianByteArray.getLong(array, offset);
-            k1 *= P2;
-            k1 = Long.rotateLeft(k1, 31);
-            k1 *= P1;
-            hash ^= k1;
-            hash = Long.rotateLeft(hash, 27) * P1 + P4;
-            offset += 8;
-            remaining -= 8;
-        }
+    public boolean isFast() {
+        return true;
+    }
 
-        if (remaining >= 4) {
-            hash ^= LittleEndianByteArray.getUnsignedInt(array, offset) * P1;
-            hash = Long.rotateLeft(hash, 23) * P2 + P3;
-            offset += 4;
-            remaining -= 4;
-        }
+    @Override
+    protected Context createContext() {
+        return new Context(seed);
+    }
 
-        while (remaining != 0) {
-            hash ^= (array[offset] & 0xff) * P5;
-            hash = Long.rotateLeft(hash, 11) * P1;
-            --remaining;
-            ++offset;
-        }
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        acc *= P1;
+        return acc;
+    }
 
-        return Utils.encodeHex(finalize(hash));
+    private static long mergeRound(long hash, long acc) {
+        hash ^= round(0L, acc);
+        return hash * P1 + P4;
     }
 
     private static long finalize(long hash) {
@@ -168,6 +72,150 @@ final class XxHash64Hasher extends Hasher {
         return hash;
     }
 
+    protected static final class Context extends HasherBase.Context {
+        private final long seed;
+
+        private long v1;
+        private long v2;
+        private long v3;
+        private long v4;
+
+        private long count;
+
+        // Bytes that do not fill a 32-byte stripe yet
+        private final byte[] memory = new byte[32];
+        private final ByteBuffer memoryBuffer = ByteBuffer.wrap(memory);
+        private int memorySize;
+
+        Context(long seed) {
+            this.seed = seed;
+            reset();
+        }
+
+        private int consumeStripes(ByteBuffer input, int offset, int limit) {
+            long v1 = this.v1;
+            long v2 = this.v2;
+            long v3 = this.v3;
+            long v4 = this.v4;
+
+            while (limit - offset >= 32) {
+                v1 = round(v1, LittleEndianByteArray.getLong(input, offset));
+                v2 = round(v2, LittleEndianByteArray.getLong(input, offset + 8));
+                v3 = round(v3, LittleEndianByteArray.getLong(input, offset + 16));
+                v4 = round(v4, LittleEndianByteArray.getLong(input, offset + 24));
+                offset += 32;
+            }
+
+            this.v1 = v1;
+            this.v2 = v2;
+            this.v3 = v3;
+            this.v4 = v4;
+            return offset;
+        }
+
+        @Override
+        protected void update(byte[] input, int offset, int len) {
+            update(arrayView(input, offset, len));
+        }
+
+        @Override
+        protected void update(ByteBuffer input) {
+            int offset = input.position();
+            final int limit = input.limit();
+            final int len = limit - offset;
+
+            count += len;
+
+            if (memorySize + len < 32) {
+                input.get(memory, memorySize, len);
+                memorySize += len;
+                return;
+            }
+
+            if (memorySize > 0) {
+                final int fillSize = 32 - memorySize;
+                input.get(memory, memorySize, fillSize);
+                offset += fillSize;
+                consumeStripes(memoryBuffer, 0, 32);
+                memorySize = 0;
+            }
+
+            offset = consumeStripes(input, offset, limit);
+
+            input.position(offset);
+            memorySize = limit - offset;
+            input.get(memory, 0, memorySize);
+        }
+
+        @Override
+        protected String digest() {
+            return Utils.encodeHex(digest64());
+        }
+
+        @Override
+        protected void digest(byte[] output, int offset) {
+            putLong(output, offset, digest64());
+        }
+
+        @Override
+        protected long digest64() {
+            long hash;
+
+            if (count >= 32) {
+                hash = Long.rotateLeft(v1, 1)
+                        + Long.rotateLeft(v2, 7)
+                        + Long.rotateLeft(v3, 12)
+                        + Long.rotateLeft(v4, 18);
+
+                hash = mergeRound(hash, v1);
+                hash = mergeRound(hash, v2);
+                hash = mergeRound(hash, v3);
+                hash = mergeRound(hash, v4);
+            } else {
+                hash = seed + P5;
+            }
+
+            hash += count;
+
+            final byte[] array = memory;
+            int offset = 0;
+            int remaining = memorySize;
+
+            while (remaining >= 8) {
+                hash ^= round(0L, LittleEndianByteArray.getLong(array, offset));
+                hash = Long.rotateLeft(hash, 27) * P1 + P4;
+                offset += 8;
+                remaining -= 8;
+            }
+
+            if (remaining >= 4) {
+                hash ^= LittleEndianByteArray.getUnsignedInt(array, offset) * P1;
+                hash = Long.rotateLeft(hash, 23) * P2 + P3;
+                offset += 4;
+                remaining -= 4;
+            }
+
+            while (remaining != 0) {
+                hash ^= (array[offset] & 0xff) * P5;
+                hash = Long.rotateLeft(hash, 11) * P1;
+                --remaining;
+                ++offset;
+            }
+
+            return XxHash64Hasher.finalize(hash);
+        }
+
+        @Override
+        protected void reset() {
+            v1 = seed + P1 + P2;
+            v2 = seed + P2;
+            v3 = seed;
+            v4 = seed - P1;
+            count = 0L;
+            memorySize = 0;
+        }
+    }
+
     public static void main(String[] args) throws IOException {
         if (args.length != 1) {
             System.err.println("Need input file");
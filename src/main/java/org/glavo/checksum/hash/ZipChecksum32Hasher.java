@@ -18,15 +18,31 @@ package org.glavo.checksum.hash;
 
 import org.glavo.checksum.util.Utils;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.function.Supplier;
 import java.util.zip.Checksum;
 
 final class ZipChecksum32Hasher extends HasherBase {
+    /**
+     * The size of the ranges hashed concurrently, files no larger than two ranges are hashed sequentially.
+     */
+    static final long RANGE_SIZE = 4L * 1024 * 1024;
+
     private final Supplier<Checksum> supplier;
+    private final ChecksumCombiner combiner;
 
-    public ZipChecksum32Hasher(Supplier<Checksum> supplier) {
-        super(4);
+    public ZipChecksum32Hasher(String name, Supplier<Checksum> supplier, ChecksumCombiner combiner) {
+        super(name, 4);
         this.supplier = supplier;
+        this.combiner = combiner;
+    }
+
+    @Override
+    public boolean isFast() {
+        return true;
     }
 
     @Override
@@ -34,6 +50,52 @@ final class ZipChecksum32Hasher extends HasherBase {
         return new Context(supplier.get());
     }
 
+    @Override
+    public String hash(SeekableByteChannel channel) throws IOException {
+        if (channel instanceof FileChannel && ParallelRanges.isParallel()) {
+            final long position = channel.position();
+            final long size = channel.size() - position;
+            if (size > 2 * RANGE_SIZE) {
+                return hashParallel((FileChannel) channel, position, size, false);
+            }
+        }
+        return super.hash(channel);
+    }
+
+    @Override
+    String hashMapped(FileChannel channel, long size) throws IOException {
+        if (ParallelRanges.isParallel() && size > 2 * RANGE_SIZE) {
+            return hashParallel(channel, 0, size, true);
+        }
+        return super.hashMapped(channel, size);
+    }
+
+    /**
+     * Checksums the ranges concurrently with positional reads (or mappings), then folds the partial checksums
+     * from left to right with the combiner, so the result is identical to the sequential checksum.
+     */
+    private String hashParallel(FileChannel channel, long position, long size, boolean mapped) throws IOException {
+        final int ranges = Math.toIntExact((size + RANGE_SIZE - 1) / RANGE_SIZE);
+        final int[] values = new int[ranges];
+
+        ParallelRanges.forEach(ranges, index -> {
+            final Context context = (Context) acquireContext();
+            try {
+                final long offset = index * RANGE_SIZE;
+                context.update(channel, position + offset, Math.min(RANGE_SIZE, size - offset), mapped);
+                values[index] = (int) context.checksum.getValue();
+            } finally {
+                releaseContext(context);
+            }
+        });
+
+        int value = values[0];
+        for (int i = 1; i < ranges; i++) {
+            value = combiner.combine(value, values[i], Math.min(RANGE_SIZE, size - i * RANGE_SIZE));
+        }
+        return Utils.encodeHex(value);
+    }
+
     protected static final class Context extends HasherBase.Context {
         private final Checksum checksum;
 
@@ -46,11 +108,30 @@ final class ZipChecksum32Hasher extends HasherBase {
             checksum.update(input, offset, len);
         }
 
+        @Override
+        protected void update(ByteBuffer input) {
+            checksum.update(input);
+        }
+
         @Override
         protected String digest() {
             return Utils.encodeHex((int) checksum.getValue());
         }
 
+        @Override
+        protected void digest(byte[] output, int offset) {
+            final int value = (int) checksum.getValue();
+            output[offset] = (byte) (value >>> 24);
+            output[offset + 1] = (byte) (value >>> 16);
+            output[offset + 2] = (byte) (value >>> 8);
+            output[offset + 3] = (byte) value;
+        }
+
+        @Override
+        protected long digest64() {
+            return checksum.getValue();
+        }
+
         @Override
         protected void reset() {
             checksum.reset();
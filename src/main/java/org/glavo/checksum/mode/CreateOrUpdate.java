@@ -18,8 +18,13 @@ package org.glavo.checksum.mode;
 
 import org.glavo.checksum.Exit;
 import org.glavo.checksum.Options;
+import org.glavo.checksum.hash.HashCache;
+import org.glavo.checksum.hash.HashPipeline;
 import org.glavo.checksum.hash.Hasher;
+import org.glavo.checksum.hash.IOMode;
 import org.glavo.checksum.path.ArrayPathComparator;
+import org.glavo.checksum.path.ParallelFileWalker;
+import org.glavo.checksum.path.SortedFileWalker;
 import org.glavo.checksum.util.*;
 
 import java.io.*;
@@ -30,19 +35,26 @@ import java.util.*;
 import java.util.concurrent.*;
 
 public final class CreateOrUpdate {
+    /**
+     * The directories are enumerated by at most this many threads, even if more files are hashed concurrently.
+     */
+    private static final int MAX_WALK_THREADS = 32;
+
+    private static final int STREAM_WINDOW_PER_THREAD = 64;
+
     private static abstract class Visitor<T> implements FileVisitor<Path> {
         private final String[] pathBuffer = new String[256]; // tmp
         private int count = -1;
 
         final TreeMap<String[], T> result = new TreeMap<>(ArrayPathComparator.INSTANCE);
 
-        private final Path exclude;
+        private final Set<Path> excludes;
 
-        Visitor(Path exclude) {
-            this.exclude = exclude;
+        Visitor(Set<Path> excludes) {
+            this.excludes = excludes;
         }
 
-        protected abstract T submit(Path file) throws IOException;
+        protected abstract T submit(String[] path, Path file, BasicFileAttributes attrs) throws IOException;
 
         @Override
         public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
@@ -55,13 +67,13 @@ public final class CreateOrUpdate {
 
         @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            if (!file.equals(exclude)) {
+            if (!excludes.contains(file)) {
                 if (attrs.isRegularFile() && Files.isReadable(file)) {
                     final int count = this.count;
 
                     final String[] p = Arrays.copyOf(pathBuffer, count + 1);
                     p[count] = file.getFileName().toString();
-                    result.put(p, submit(file));
+                    result.put(p, submit(p, file, attrs));
                 } else {
                     Logger.error(Lang.getInstance().getFileCannotBeReadMessage(file));
                 }
@@ -82,9 +94,17 @@ public final class CreateOrUpdate {
         }
     }
 
-    private static void doCreate(String[] pathArray, String v, Writer writer) throws IOException {
-        writer.write(v);
+    private static void writeHash(String hash, long size, Writer writer) throws IOException {
+        writer.write(hash);
+        if (size != HashRecord.UNKNOWN_SIZE) {
+            writer.write(' ');
+            writer.write(Long.toString(size));
+        }
         writer.write("  ");
+    }
+
+    static void doCreate(String[] pathArray, String v, long size, Writer writer) throws IOException {
+        writeHash(v, size, writer);
 
         final int length = pathArray.length;
         if (length != 0) {
@@ -97,7 +117,7 @@ public final class CreateOrUpdate {
         writer.write('\n');
     }
 
-    private static void doUpdate(String[] pathArray, String newHash, Writer writer, Map<String, String> old) throws IOException {
+    private static void doUpdate(String[] pathArray, String newHash, long size, Writer writer, Map<String, String> old, boolean logNewFile) throws IOException {
         final String path;
 
         final int length = pathArray.length;
@@ -115,86 +135,348 @@ public final class CreateOrUpdate {
 
         String oldHash = old.remove(path);
         if (oldHash == null) {
-            Logger.info(Lang.getInstance().getNewFileBeRecordedMessage(path));
+            if (logNewFile) {
+                Logger.info(Lang.getInstance().getNewFileBeRecordedMessage(path));
+            }
         } else if (!oldHash.equalsIgnoreCase(newHash)) {
             Logger.info(Lang.getInstance().getFileHashUpdatedMessage(path, newHash, oldHash));
         }
 
-        writer.write(newHash);
-        writer.write("  ");
+        writeHash(newHash, size, writer);
         writer.write(path);
         writer.write('\n');
     }
 
-    public static void createOrUpdate(
-            Path basePath,
-            Writer writer,
-            Path exclude,
-            Hasher hasher,
-            int numThreads,
-            Map<String, String> old) throws IOException {
-
-        final Set<FileVisitOption> fileVisitOptions = Collections.singleton(FileVisitOption.FOLLOW_LINKS);
-
-        if (numThreads > 1) {
-            final ExecutorService pool = Executors.newFixedThreadPool(numThreads, new ChecksumThreadFactory());
-            final Visitor<Future<String>> visitor = new Visitor<>(exclude) {
+    /**
+     * @param size the size of the file when it was walked, or {@code HashRecord.UNKNOWN_SIZE} if it is not recorded
+     */
+    private static void write(String[] pathArray, String[] hashes, long size, Writer[] writers, List<Map<String, String>> old, IncrementalUpdate incremental) throws IOException {
+        for (int i = 0; i < writers.length; i++) {
+            if (old == null) {
+                doCreate(pathArray, hashes[i], size, writers[i]);
+            } else {
+                doUpdate(pathArray, hashes[i], size, writers[i], old.get(i), i == 0);
+            }
+        }
+        if (incremental != null) {
+            incremental.written(pathArray);
+        }
+    }
+
+    private static void write(PendingFile pending, Writer[] writers, List<Map<String, String>> old, IncrementalUpdate incremental) throws IOException {
+        final String[] pathArray = pending.pathArray;
+        String[] hashes;
+        try {
+            hashes = pending.future.get();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        } catch (ExecutionException e) {
+            String file = String.join("/", pathArray);
+            Logger.error(Lang.getInstance().getHashErrorMessage(file), e.getCause());
+            if (incremental != null) {
+                incremental.discard(pathArray);
+            }
+            return;
+        }
+
+        write(pathArray, hashes, pending.size, writers, old, incremental);
+    }
+
+    static String[] hashFile(Path file, IOMode ioMode, Hasher[] hashers, HashCache cache) throws IOException {
+        return cache != null ? cache.hashFile(file, ioMode, hashers) : Hasher.hashFile(file, ioMode, hashers);
+    }
+
+    static CompletableFuture<String[]> submitToPipeline(HashPipeline pipeline, Path file, Hasher[] hashers, HashCache cache) {
+        return cache != null ? cache.hashFile(file, hashers, pipeline::submit) : pipeline.submit(file, hashers);
+    }
+
+    private static final class PendingFile {
+        final String[] pathArray;
+        final long size;
+        final Future<String[]> future;
+
+        PendingFile(String[] pathArray, long size, Future<String[]> future) {
+            this.pathArray = pathArray;
+            this.size = size;
+            this.future = future;
+        }
+    }
+
+    /**
+     * Returns the size to record for the file, taken from the attributes the file was walked with.
+     */
+    private static long sizeOf(BasicFileAttributes attrs, boolean recordSizes) {
+        return recordSizes ? attrs.size() : HashRecord.UNKNOWN_SIZE;
+    }
+
+    /**
+     * Hashes the files in sorted order while walking the tree, and writes the records as soon as the files before them
+     * have been written. At most {@code STREAM_WINDOW_PER_THREAD} files per thread are in flight,
+     * so the memory does not grow with the number of files in the tree.
+     */
+    private static void stream(
+            Options options,
+            Writer[] writers,
+            Set<Path> excludes,
+            List<Map<String, String>> old,
+            IncrementalUpdate incremental,
+            HashCache cache,
+            boolean recordSizes) throws IOException {
+
+        final Hasher[] hashers = options.algorithms;
+        final IOMode ioMode = options.ioMode;
+
+        final HashPipeline pipeline = options.usePipeline() ? new HashPipeline(options.ioThreads, options.hashThreads) : null;
+        final ExecutorService pool = pipeline == null && (options.numThreads > 1 || options.virtualThreads) ? options.newExecutor() : null;
+
+        final int threads = pipeline != null ? options.ioThreads + options.hashThreads : options.numThreads;
+        final int windowSize = STREAM_WINDOW_PER_THREAD * threads;
+        final ArrayDeque<PendingFile> window = new ArrayDeque<>(windowSize + 1);
+
+        try {
+            new SortedFileWalker(excludes) {
                 @Override
-                protected Future<String> submit(Path file) {
-                    return pool.submit(() -> hasher.hashFile(file));
+                protected void visitFile(String[] pathArray, Path file, BasicFileAttributes attrs) throws IOException {
+                    final long size = sizeOf(attrs, recordSizes);
+                    if (incremental != null) {
+                        final String[] reused = incremental.submit(pathArray, file, attrs, old);
+                        if (reused != null) {
+                            window.add(new PendingFile(pathArray, size, CompletableFuture.completedFuture(reused)));
+                            writeCompleted();
+                            return;
+                        }
+                    }
+
+                    if (pipeline == null && pool == null) {
+                        final String[] hashes;
+                        try {
+                            hashes = hashFile(file, ioMode, hashers, cache);
+                        } catch (IOException e) {
+                            Logger.error(Lang.getInstance().getHashErrorMessage(file), e);
+                            if (incremental != null) {
+                                incremental.discard(pathArray);
+                            }
+                            return;
+                        }
+                        write(pathArray, hashes, size, writers, old, incremental);
+                        return;
+                    }
+
+                    window.add(new PendingFile(pathArray, size, pipeline != null
+                            ? submitToPipeline(pipeline, file, hashers, cache)
+                            : pool.submit(() -> hashFile(file, ioMode, hashers, cache))));
+                    writeCompleted();
                 }
-            };
 
-            try {
-                Files.walkFileTree(basePath, fileVisitOptions, Integer.MAX_VALUE, visitor);
-            } finally {
+                /**
+                 * Writes the completed prefix, and waits for the oldest file when the window is full.
+                 */
+                private void writeCompleted() throws IOException {
+                    PendingFile head;
+                    while ((head = window.peek()) != null && (window.size() > windowSize || head.future.isDone())) {
+                        window.poll();
+                        write(head, writers, old, incremental);
+                    }
+                }
+            }.walk(options.basePath);
+
+            PendingFile head;
+            while ((head = window.poll()) != null) {
+                write(head, writers, old, incremental);
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+            } else if (pool != null) {
                 pool.shutdown();
             }
+        }
+    }
 
-            for (Map.Entry<String[], Future<String>> entry : visitor.result.entrySet()) {
-                String[] pathArray = entry.getKey();
-                Future<String> future = entry.getValue();
+    /**
+     * Hashes the files in {@code options.basePath} with each algorithm of {@code options.algorithms},
+     * and writes the records of the {@code i}-th algorithm to {@code writers[i]}.
+     *
+     * @param old the existing records of each algorithm in update mode, or {@code null} in create mode
+     */
+    public static void createOrUpdate(
+            Options options,
+            Writer[] writers,
+            Set<Path> excludes,
+            List<Map<String, String>> old) throws IOException {
+        createOrUpdate(options, writers, excludes, old, null, null, options.size);
+    }
+
+    /**
+     * @param incremental the metadata file of {@code --incremental}, or {@code null}
+     * @param cache       the hash cache of {@code --cache} and {@code --xattr}, or {@code null}
+     * @param recordSizes whether the sizes of the files are recorded
+     */
+    private static void createOrUpdate(
+            Options options,
+            Writer[] writers,
+            Set<Path> excludes,
+            List<Map<String, String>> old,
+            IncrementalUpdate incremental,
+            HashCache cache,
+            boolean recordSizes) throws IOException {
+
+        final Path basePath = options.basePath;
+        final Hasher[] hashers = options.algorithms;
+        final int numThreads = options.numThreads;
+        final IOMode ioMode = options.ioMode;
+
+        if (options.stream) {
+            stream(options, writers, excludes, old, incremental, cache, recordSizes);
+        } else if (options.usePipeline() || numThreads > 1 || options.virtualThreads || options.perDevice() || options.order != FileOrder.FIFO) {
+            final HashPipeline pipeline = options.usePipeline() ? new HashPipeline(options.ioThreads, options.hashThreads) : null;
+            final DeviceScheduler devices = pipeline == null && options.perDevice() ? new DeviceScheduler(options::suggestNumThreads) : null;
+            final ExecutorService pool = pipeline == null && devices == null ? options.newExecutor() : null;
+            final FileOrderScheduler scheduler = options.order != FileOrder.FIFO ? new FileOrderScheduler(options.order) : null;
+            final ParallelFileWalker<PendingFile> walker = new ParallelFileWalker<>(excludes) {
+                private CompletableFuture<String[]> start(Path file, BasicFileAttributes attrs) {
+                    if (pipeline != null) {
+                        return submitToPipeline(pipeline, file, hashers, cache);
+                    } else if (devices != null) {
+                        return devices.submit(file, () -> hashFile(file, ioMode, hashers, cache));
+                    } else {
+                        return FileOrderScheduler.submit(pool, () -> hashFile(file, ioMode, hashers, cache));
+                    }
+                }
 
+                @Override
+                protected PendingFile submit(String[] path, Path file, BasicFileAttributes attrs) {
+                    final long size = sizeOf(attrs, recordSizes);
+                    if (incremental != null) {
+                        final String[] reused = incremental.submit(path, file, attrs, old);
+                        if (reused != null) {
+                            return new PendingFile(path, size, CompletableFuture.completedFuture(reused));
+                        }
+                    }
 
-                String hash;
-                try {
-                    hash = future.get();
-                } catch (InterruptedException e) {
-                    throw new AssertionError(e);
-                } catch (ExecutionException e) {
-                    String file = String.join("/", pathArray);
-                    Logger.error(Lang.getInstance().getHashErrorMessage(file), e.getCause());
-                    continue;
+                    return new PendingFile(path, size, scheduler != null
+                            ? scheduler.add(options.order.keyOf(file, attrs), () -> start(file, attrs))
+                            : start(file, attrs));
                 }
+            };
 
-                if (old == null) {
-                    doCreate(pathArray, hash, writer);
+            try {
+                walker.walk(basePath, Math.min(numThreads, MAX_WALK_THREADS));
+                if (scheduler != null) {
+                    scheduler.dispatch();
+                }
+            } finally {
+                if (pipeline != null) {
+                    pipeline.close();
+                } else if (devices != null) {
+                    devices.shutdown();
                 } else {
-                    doUpdate(pathArray, hash, writer, old);
+                    pool.shutdown();
                 }
             }
+
+            for (PendingFile file : walker.result.values()) {
+                write(file, writers, old, incremental);
+            }
         } else {
-            final Visitor<String> visitor = new Visitor<>(exclude) {
+            final Visitor<PendingFile> visitor = new Visitor<>(excludes) {
                 @Override
-                protected String submit(Path file) throws IOException {
-                    return hasher.hashFile(file);
+                protected PendingFile submit(String[] path, Path file, BasicFileAttributes attrs) throws IOException {
+                    final long size = sizeOf(attrs, recordSizes);
+                    if (incremental != null) {
+                        final String[] reused = incremental.submit(path, file, attrs, old);
+                        if (reused != null) {
+                            return new PendingFile(path, size, CompletableFuture.completedFuture(reused));
+                        }
+                    }
+                    return new PendingFile(path, size, CompletableFuture.completedFuture(hashFile(file, ioMode, hashers, cache)));
                 }
             };
-            Files.walkFileTree(basePath, fileVisitOptions, Integer.MAX_VALUE, visitor);
+            Files.walkFileTree(basePath, Collections.singleton(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, visitor);
 
-            for (Map.Entry<String[], String> entry : visitor.result.entrySet()) {
-                String[] pathArray = entry.getKey();
-                String hash = entry.getValue();
+            for (PendingFile file : visitor.result.values()) {
+                write(file, writers, old, incremental);
+            }
+        }
 
-                if (old == null) {
-                    doCreate(pathArray, hash, writer);
-                } else {
-                    doUpdate(pathArray, hash, writer, old);
+        Logger.info(Lang.getInstance().getDoneMessage());
+    }
+
+    /**
+     * Returns the checksums file of the algorithm, {@code checksums.txt} becomes {@code checksums.sha-256.txt} when
+     * multiple algorithms are used.
+     */
+    static Path checksumsFileOf(String checksumsFile, Hasher hasher, boolean multiple) {
+        final Path file = Paths.get(checksumsFile).toAbsolutePath();
+        if (!multiple) {
+            return file;
+        }
+
+        final String algorithm = hasher.getName().toLowerCase(Locale.ROOT).replace('/', '_');
+        final String fileName = file.getFileName().toString();
+        final int idx = fileName.lastIndexOf('.');
+        return file.resolveSibling(idx > 0
+                ? fileName.substring(0, idx) + "." + algorithm + fileName.substring(idx)
+                : fileName + "." + algorithm);
+    }
+
+    /**
+     * Reads the existing records of the checksums file in update mode, and asks the user for confirmation if needed.
+     *
+     * @return {@code true} if the existing records contain the sizes of the files, so they should be kept
+     * @throws Exit if the user refuses to continue
+     */
+    static boolean prepare(Options options, Path cf, Hasher hasher, boolean update, Map<String, String> old) throws IOException, Exit {
+        if (Files.isDirectory(cf)) {
+            Logger.error(Lang.getInstance().getPathIsDirMessage(cf));
+            throw Exit.error();
+        }
+        if (Files.exists(cf)) {
+            if (update) {
+                boolean hasError = false;
+                boolean hasSizes = false;
+                try (BufferedReader r = Files.newBufferedReader(cf)) {
+                    String line;
+                    while ((line = r.readLine()) != null) {
+                        if (!line.isEmpty()) {
+                            final HashRecord p = HashRecord.of(line);
+                            if (p == null || !hasher.isAcceptChecksum(p.hash)) {
+                                Logger.error(Lang.getInstance().getInvalidHashRecordMessage(line));
+                                hasError = true;
+                            } else {
+                                if (p.size != HashRecord.UNKNOWN_SIZE) {
+                                    hasSizes = true;
+                                }
+                                String oldHash = old.put(p.file, p.hash);
+                                if (oldHash != null) {
+                                    Logger.error(Lang.getInstance().getDuplicateHashRecordMessage(p.file));
+                                    hasError = true;
+                                }
+                            }
+                        }
+                    }
+                }
+
+                if (hasError && !options.assumeYes) {
+                    Logger.error(Lang.getInstance().getHasErrorMessage(cf));
+                    confirm();
                 }
+                return hasSizes;
+            } else if (!options.assumeYes) {
+                Logger.error(Lang.getInstance().getOverwriteFileMessage(cf));
+                confirm();
             }
+        } else if (update && !options.assumeYes) {
+            Logger.error(Lang.getInstance().getCreateFileMessage(cf));
+            confirm();
         }
+        return false;
+    }
 
-        Logger.info(Lang.getInstance().getDoneMessage());
+    private static void confirm() throws IOException, Exit {
+        if (!IOUtils.readChoice()) {
+            throw Exit.success();
+        }
     }
 
     public static void createOrUpdate(Iterator<String> args, boolean update) throws IOException, Exit {
@@ -202,15 +484,29 @@ public final class CreateOrUpdate {
 
         if (options.algorithm == null) {
             options.algorithm = Hasher.getDefault();
+            options.algorithms = new Hasher[]{options.algorithm};
         }
-        Map<String, String> old = null;
-        Writer writer;
-        Path exclude = null;
+
+        final Hasher[] hashers = options.algorithms;
+        final boolean multiple = hashers.length > 1;
+
+        List<Map<String, String>> old = null;
+        boolean recordSizes = options.size;
+        final Writer[] writers = new Writer[hashers.length];
+        final Set<Path> excludes = new HashSet<>();
         if ("-".equals(options.checksumsFile)) {
             if (update) {
                 Logger.error(Lang.getInstance().getInvalidOptionValueMessage("-f", "-"));
                 throw Exit.success();
             }
+            if (multiple) {
+                Logger.error(Lang.getInstance().getMultipleAlgorithmsToStdoutMessage());
+                throw Exit.error();
+            }
+            if (options.incremental) {
+                Logger.error(Lang.getInstance().getOptionMixedMessage("--incremental", "-f -"));
+                throw Exit.error();
+            }
 
             String stdoutEncoding = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding", System.getProperty("native.encoding")));
             Charset charset;
@@ -219,60 +515,64 @@ public final class CreateOrUpdate {
             } else {
                 charset = Charset.defaultCharset();
             }
-            writer = new BufferedWriter(new OutputStreamWriter(System.out, charset));
+            writers[0] = new BufferedWriter(new OutputStreamWriter(System.out, charset));
         } else {
-            final Path cf = Paths.get(options.checksumsFile).toAbsolutePath();
-            if (Files.isDirectory(cf)) {
-                Logger.error(Lang.getInstance().getPathIsDirMessage(cf));
-                throw Exit.error();
+            if (update) {
+                old = new ArrayList<>(hashers.length);
             }
-            if (Files.exists(cf)) {
+
+            final Path[] files = new Path[hashers.length];
+            for (int i = 0; i < hashers.length; i++) {
+                final Path cf = checksumsFileOf(options.checksumsFile, hashers[i], multiple);
+                final Map<String, String> records = update ? new HashMap<>() : null;
+                if (prepare(options, cf, hashers[i], update, records)) {
+                    // Keep recording the sizes
+                    recordSizes = true;
+                }
                 if (update) {
-                    old = new HashMap<>();
-                    boolean hasError = false;
-                    try (BufferedReader r = Files.newBufferedReader(cf)) {
-                        String line;
-                        while ((line = r.readLine()) != null) {
-                            if (!line.isEmpty()) {
-                                final HashRecord p = HashRecord.of(line);
-                                if (p == null || !options.algorithm.isAcceptChecksum(p.hash)) {
-                                    Logger.error(Lang.getInstance().getInvalidHashRecordMessage(line));
-                                    hasError = true;
-                                } else {
-                                    String oldHash = old.put(p.file, p.hash);
-                                    if (oldHash != null) {
-                                        Logger.error(Lang.getInstance().getDuplicateHashRecordMessage(p.file));
-                                        hasError = true;
-                                    }
-                                }
-                            }
-                        }
-                    }
+                    old.add(records);
+                }
+                files[i] = cf;
+                excludes.add(cf);
+            }
 
-                    if (hasError && !options.assumeYes) {
-                        Logger.error(Lang.getInstance().getHasErrorMessage(cf));
-                        if (!IOUtils.readChoice()) {
-                            return;
-                        }
-                    }
-                } else if (!options.assumeYes) {
-                    Logger.error(Lang.getInstance().getOverwriteFileMessage(cf));
-                    if (!IOUtils.readChoice()) {
-                        return;
-                    }
+            try {
+                for (int i = 0; i < hashers.length; i++) {
+                    writers[i] = Files.newBufferedWriter(files[i]);
                 }
-            } else if (update && !options.assumeYes) {
-                Logger.error(Lang.getInstance().getCreateFileMessage(cf));
-                if (!IOUtils.readChoice()) {
-                    return;
+            } catch (Throwable e) {
+                for (Writer writer : writers) {
+                    if (writer != null) {
+                        writer.close();
+                    }
                 }
+                throw e;
             }
-            exclude = cf;
-            writer = Files.newBufferedWriter(cf);
         }
 
-        try (writer) {
-            CreateOrUpdate.createOrUpdate(options.basePath, writer, exclude, options.algorithm, options.numThreads, old);
+        IncrementalUpdate incremental = null;
+        final HashCache cache = options.cache || options.xattr ? HashCache.open(options.cache, options.xattr) : null;
+        try {
+            if (options.incremental) {
+                final Path metadataFile = FileMetadata.sidecarOf(Paths.get(options.checksumsFile).toAbsolutePath());
+                excludes.add(metadataFile);
+                incremental = new IncrementalUpdate(metadataFile, update, options.paranoid);
+            }
+            if (cache != null) {
+                Collections.addAll(excludes, cache.getFiles());
+            }
+
+            CreateOrUpdate.createOrUpdate(options, writers, excludes, old, incremental, cache, recordSizes);
+        } finally {
+            for (Writer writer : writers) {
+                writer.close();
+            }
+            if (incremental != null) {
+                incremental.close();
+            }
+            if (cache != null) {
+                cache.close();
+            }
         }
     }
 }
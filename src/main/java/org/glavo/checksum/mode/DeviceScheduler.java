@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import org.glavo.checksum.util.ChecksumThreadFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Hashes the files of each storage device in a separate pool, so a tree that spans several file systems
+ * through symbolic links reads a hard disk with one thread while an SSD is read with many.
+ * <p>
+ * The devices are told apart by the {@code unix:dev} attribute of the files, or by their file stores on other systems.
+ * The pool of a device is created when its first file is submitted, with the number of threads chosen for the storage
+ * of that file.
+ */
+final class DeviceScheduler {
+    private static final Object UNKNOWN_DEVICE = new Object();
+
+    private final ToIntFunction<Path> numThreads;
+    private final ConcurrentHashMap<Object, ExecutorService> pools = new ConcurrentHashMap<>();
+
+    /**
+     * @param numThreads returns the number of threads for the device of the file
+     */
+    DeviceScheduler(ToIntFunction<Path> numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Returns the device of the file: the device number ({@code unix:dev}) on Unix, the file store on other systems,
+     * or an unknown device if it cannot be read.
+     */
+    static Object deviceOf(Path file) {
+        try {
+            if (file.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+                return Files.getAttribute(file, "unix:dev");
+            } else {
+                return Files.getFileStore(file);
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+            return UNKNOWN_DEVICE; // The error is reported when hashing
+        }
+    }
+
+    /**
+     * Returns the pool of the device of the file.
+     */
+    ExecutorService poolOf(Path file) {
+        return pools.computeIfAbsent(deviceOf(file), device -> ChecksumThreadFactory.newPool(numThreads.applyAsInt(file)));
+    }
+
+    /**
+     * Runs the task on the pool of the device of the file. If the caller is a task of that pool
+     * (e.g. a batch of records checked on the pool of the base directory), the task is run by the caller instead.
+     */
+    <T> CompletableFuture<T> submit(Path file, Callable<T> task) {
+        final ExecutorService pool = poolOf(file);
+        if (ForkJoinTask.getPool() == pool) {
+            try {
+                return CompletableFuture.completedFuture(task.call());
+            } catch (Throwable e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return FileOrderScheduler.submit(pool, task);
+    }
+
+    void shutdown() {
+        for (ExecutorService pool : pools.values()) {
+            pool.shutdown();
+        }
+    }
+
+    void awaitTermination() throws InterruptedException {
+        for (ExecutorService pool : pools.values()) {
+            if (!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new AssertionError();
+            }
+        }
+    }
+}
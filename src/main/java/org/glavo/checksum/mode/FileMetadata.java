@@ -0,0 +1,150 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The size, modification time and status change time of a file, recorded in the metadata file next to the checksums
+ * file so that {@code update --incremental} can skip the files that have not changed.
+ * <p>
+ * The metadata file starts with a header holding the time the records were taken, followed by one line per file:
+ * <pre>
+ * # gchecksum-metadata &lt;time&gt;
+ * &lt;size&gt; &lt;mtime&gt; &lt;ctime&gt; &lt;path&gt;
+ * </pre>
+ * The times are nanoseconds since the epoch, the ctime is {@code -1} where it is not available.
+ */
+final class FileMetadata {
+    private static final String HEADER = "# gchecksum-metadata ";
+
+    /**
+     * Files modified this shortly before the records were taken may have been modified again within the granularity
+     * of the file system timestamps after being hashed, so they are always hashed again.
+     */
+    static final long RACY_MARGIN = TimeUnit.SECONDS.toNanos(2);
+
+    static final long UNKNOWN_TIME = -1L;
+
+    final long size;
+    final long mtime;
+    final long ctime;
+
+    FileMetadata(long size, long mtime, long ctime) {
+        this.size = size;
+        this.mtime = mtime;
+        this.ctime = ctime;
+    }
+
+    static Path sidecarOf(Path checksumsFile) {
+        return checksumsFile.resolveSibling(checksumsFile.getFileName() + ".meta");
+    }
+
+    static long now() {
+        final java.time.Instant now = java.time.Instant.now();
+        return TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+    }
+
+    private static long toNanos(FileTime time) {
+        return time.to(TimeUnit.NANOSECONDS);
+    }
+
+    static FileMetadata of(Path file, BasicFileAttributes attrs) {
+        long ctime;
+        try {
+            final Object value = Files.getAttribute(file, "unix:ctime");
+            ctime = value instanceof FileTime ? toNanos((FileTime) value) : UNKNOWN_TIME;
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            ctime = UNKNOWN_TIME;
+        }
+        return new FileMetadata(attrs.size(), toNanos(attrs.lastModifiedTime()), ctime);
+    }
+
+    /**
+     * Returns {@code true} if the file has not changed since this metadata was recorded at {@code recordTime}.
+     */
+    boolean isUnchanged(FileMetadata current, long recordTime) {
+        return size == current.size
+               && mtime == current.mtime
+               && ctime == current.ctime
+               && mtime < recordTime - RACY_MARGIN
+               && (ctime == UNKNOWN_TIME || ctime < recordTime - RACY_MARGIN);
+    }
+
+    static void writeHeader(Writer writer, long recordTime) throws IOException {
+        writer.write(HEADER);
+        writer.write(Long.toString(recordTime));
+        writer.write('\n');
+    }
+
+    void write(Writer writer, String path) throws IOException {
+        writer.write(Long.toString(size));
+        writer.write(' ');
+        writer.write(Long.toString(mtime));
+        writer.write(' ');
+        writer.write(Long.toString(ctime));
+        writer.write(' ');
+        writer.write(path);
+        writer.write('\n');
+    }
+
+    /**
+     * Reads the metadata file into {@code result}, returns the time the records were taken,
+     * or {@code -1} if the file is not a metadata file. Invalid lines are ignored, the files are hashed again.
+     */
+    static long read(BufferedReader reader, Map<String, FileMetadata> result) throws IOException {
+        final String header = reader.readLine();
+        if (header == null || !header.startsWith(HEADER)) {
+            return -1L;
+        }
+
+        final long recordTime;
+        try {
+            recordTime = Long.parseLong(header.substring(HEADER.length()).trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            final int i1 = line.indexOf(' ');
+            final int i2 = i1 < 0 ? -1 : line.indexOf(' ', i1 + 1);
+            final int i3 = i2 < 0 ? -1 : line.indexOf(' ', i2 + 1);
+            if (i3 < 0) {
+                continue;
+            }
+
+            try {
+                result.put(line.substring(i3 + 1), new FileMetadata(
+                        Long.parseLong(line.substring(0, i1)),
+                        Long.parseLong(line.substring(i1 + 1, i2)),
+                        Long.parseLong(line.substring(i2 + 1, i3))));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return recordTime;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+
+/**
+ * The order in which the files are handed to the hashing threads. The output order is not affected.
+ */
+public enum FileOrder {
+    /**
+     * In the order the files are found in the directory tree or listed in the checksums file.
+     */
+    FIFO,
+
+    /**
+     * The largest files first, so that a large file found last does not leave one thread hashing alone at the end.
+     * The sizes of all files are gathered before hashing starts.
+     */
+    SIZE,
+
+    /**
+     * By inode number, which roughly follows the position of the files on the disk,
+     * so a hard disk reads them with fewer seeks. Unix only, the others are left in FIFO order.
+     */
+    INODE;
+
+    public static FileOrder ofName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "fifo":
+                return FIFO;
+            case "size":
+                return SIZE;
+            case "inode":
+                return INODE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the key the files are sorted by.
+     */
+    long keyOf(Path file, BasicFileAttributes attrs) {
+        switch (this) {
+            case SIZE:
+                return attrs.size();
+            case INODE:
+                return inodeOf(file);
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * Returns the inode number of the file ({@code unix:ino}), or {@code 0} if it is not available.
+     */
+    static long inodeOf(Path file) {
+        try {
+            if (file.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+                final Object inode = Files.getAttribute(file, "unix:ino");
+                if (inode instanceof Long) {
+                    return (Long) inode;
+                }
+            }
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException | SecurityException e) {
+            // The error is reported when hashing
+        }
+        return 0L;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Collects tasks with the key of their files (see {@link FileOrder#keyOf}), and starts them in the order of the keys:
+ * from the largest to the smallest file for {@link FileOrder#SIZE} (longest processing time first),
+ * or by inode number for {@link FileOrder#INODE}.
+ */
+final class FileOrderScheduler {
+    private static final class Task<T> {
+        final long key;
+        final Supplier<CompletableFuture<T>> start;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Task(long key, Supplier<CompletableFuture<T>> start) {
+            this.key = key;
+            this.start = start;
+        }
+
+        void start() {
+            final CompletableFuture<T> future;
+            try {
+                future = start.get();
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            future.whenComplete((value, exception) -> {
+                if (exception != null) {
+                    result.completeExceptionally(exception);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+    }
+
+    private final FileOrder order;
+    private final ConcurrentLinkedQueue<Task<?>> tasks = new ConcurrentLinkedQueue<>();
+
+    FileOrderScheduler(FileOrder order) {
+        this.order = order;
+    }
+
+    /**
+     * Adds a task, it is started by {@link #dispatch()}. Can be called concurrently.
+     *
+     * @return the future that is completed with the result of the task
+     */
+    <T> CompletableFuture<T> add(long key, Supplier<CompletableFuture<T>> start) {
+        final Task<T> task = new Task<>(key, start);
+        tasks.add(task);
+        return task.result;
+    }
+
+    void dispatch() {
+        final List<Task<?>> list = new ArrayList<>(tasks);
+        tasks.clear();
+        final Comparator<Task<?>> comparator = Comparator.comparingLong(task -> task.key);
+        // The sort is stable, so the tasks with the same key are started in the order they were added
+        list.sort(order == FileOrder.SIZE ? comparator.reversed() : comparator);
+        for (Task<?> task : list) {
+            task.start();
+        }
+    }
+
+    /**
+     * Runs the task on the executor, the future is completed with its result or exception.
+     */
+    static <T> CompletableFuture<T> submit(Executor executor, Callable<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
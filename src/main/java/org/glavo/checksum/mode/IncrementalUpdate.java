@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the metadata file of {@code --incremental}: reuses the old hashes of the files whose metadata has not changed,
+ * and records the metadata of the files as their records are written.
+ */
+final class IncrementalUpdate implements Closeable {
+    private final Map<String, FileMetadata> oldMetadata = new HashMap<>();
+    private final long oldRecordTime;
+    private final boolean paranoid;
+
+    private final Writer writer;
+
+    /**
+     * The metadata of the files that have been submitted but not written yet.
+     */
+    private final ConcurrentHashMap<String, FileMetadata> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Reads the old metadata file in update mode, and replaces it with a new one.
+     */
+    IncrementalUpdate(Path file, boolean update, boolean paranoid) throws IOException {
+        long oldRecordTime = -1L;
+        if (update && !paranoid && Files.isRegularFile(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                oldRecordTime = FileMetadata.read(reader, oldMetadata);
+            }
+        }
+
+        this.oldRecordTime = oldRecordTime;
+        this.paranoid = paranoid;
+        this.writer = Files.newBufferedWriter(file);
+
+        try {
+            // Taken before any file is hashed, so the files modified during this run are hashed again next time
+            FileMetadata.writeHeader(writer, FileMetadata.now());
+        } catch (Throwable e) {
+            writer.close();
+            throw e;
+        }
+    }
+
+    static String pathOf(String[] pathArray) {
+        return String.join("/", pathArray);
+    }
+
+    /**
+     * Records the metadata of the file before it is hashed, and returns the old hashes of each algorithm if the file
+     * has not changed since they were computed, or {@code null} if the file needs to be hashed.
+     *
+     * @param old the existing records of each algorithm, or {@code null} in create mode
+     */
+    String[] submit(String[] pathArray, Path file, BasicFileAttributes attrs, List<Map<String, String>> old) {
+        final String path = pathOf(pathArray);
+        final FileMetadata metadata = FileMetadata.of(file, attrs);
+        pending.put(path, metadata);
+
+        if (paranoid || old == null || oldRecordTime < 0) {
+            return null;
+        }
+
+        final FileMetadata oldMetadata = this.oldMetadata.get(path);
+        if (oldMetadata == null || !oldMetadata.isUnchanged(metadata, oldRecordTime)) {
+            return null;
+        }
+
+        final String[] hashes = new String[old.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = old.get(i).get(path);
+            if (hashes[i] == null) {
+                return null;
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Writes the metadata of the file after its records have been written.
+     */
+    void written(String[] pathArray) throws IOException {
+        final String path = pathOf(pathArray);
+        final FileMetadata metadata = pending.remove(path);
+        if (metadata != null) {
+            metadata.write(writer, path);
+        }
+    }
+
+    /**
+     * Drops the metadata of a file that could not be hashed.
+     */
+    void discard(String[] pathArray) {
+        pending.remove(pathOf(pathArray));
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
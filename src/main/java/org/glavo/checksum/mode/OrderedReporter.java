@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Reports the results of the records in the order of their sequence numbers, whatever order they are completed in.
+ * <p>
+ * The results are published into a ring buffer indexed by the sequence number, and the thread that publishes
+ * the next expected result reports it, together with the completed results after it.
+ * Only one thread reports at a time (guarded by a flag rather than a lock), the others just leave their result
+ * in the ring and return. The caller must make sure that at most {@code capacity} results are in flight,
+ * i.e. a sequence number is only taken after the result {@code capacity} before it has been reported.
+ */
+final class OrderedReporter<T> {
+    private final AtomicReferenceArray<T> ring;
+    private final int mask;
+    private final Consumer<? super T> action;
+
+    private final AtomicBoolean reporting = new AtomicBoolean();
+
+    /**
+     * The sequence number of the next result to report, only written by the reporting thread.
+     */
+    private volatile long head;
+
+    /**
+     * The next sequence number, only used by the thread that reads the records.
+     */
+    private long tail;
+
+    OrderedReporter(int capacity, Consumer<? super T> action) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.action = action;
+    }
+
+    /**
+     * Takes the next sequence number. Must be called by a single thread.
+     */
+    long next() {
+        return tail++;
+    }
+
+    /**
+     * Publishes the result of the sequence number, and reports the results that are ready if no thread is reporting.
+     */
+    void publish(long sequence, T result) {
+        ring.set((int) sequence & mask, result);
+
+        while (reporting.compareAndSet(false, true)) {
+            try {
+                long h = head;
+                T next;
+                while ((next = ring.get((int) h & mask)) != null) {
+                    ring.set((int) h & mask, null);
+                    head = ++h;
+                    action.accept(next);
+                }
+            } finally {
+                reporting.set(false);
+            }
+
+            // A result published while the flag was set is reported by this thread
+            if (ring.get((int) head & mask) == null) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if all results of the taken sequence numbers have been reported.
+     */
+    boolean isDrained() {
+        return head == tail;
+    }
+}
@@ -18,7 +18,10 @@ package org.glavo.checksum.mode;
 
 import org.glavo.checksum.Exit;
 import org.glavo.checksum.Options;
+import org.glavo.checksum.hash.HashCache;
+import org.glavo.checksum.hash.HashPipeline;
 import org.glavo.checksum.hash.Hasher;
+import org.glavo.checksum.hash.IOMode;
 import org.glavo.checksum.util.*;
 
 import java.io.BufferedReader;
@@ -26,54 +29,237 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Iterator;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 public final class Verify {
-    private static boolean verifyFile(Path basePath, String line, Hasher hasher) {
-        final HashRecord r = HashRecord.of(line);
-        if (r == null) {
-            Logger.error(Lang.getInstance().getInvalidHashRecordMessage(line));
+    private static final int DEFAULT_PENDING_PER_THREAD = 64;
+    private static final int MAX_BATCH_SIZE = 16;
+
+    /**
+     * The result of verifying a record. The error is kept until the result is reported,
+     * so the results are reported in the order of the checksums file rather than in the order they are completed.
+     */
+    private static final class Result {
+        boolean success;
+        String message;
+        Throwable exception;
+
+        boolean fail(String message) {
+            this.message = message;
             return false;
         }
 
-        final String recordHashValue = r.hash;
-        if (!hasher.isAcceptChecksum(recordHashValue)) {
-            Logger.error(Lang.getInstance().getInvalidHashRecordMessage(line));
+        boolean fail(String message, Throwable exception) {
+            this.message = message;
+            this.exception = exception;
             return false;
         }
 
+        void report() {
+            if (message != null) {
+                if (exception != null) {
+                    Logger.error(message, exception);
+                } else {
+                    Logger.error(message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts and reports the results in the order of the checksums file, from whichever thread completes the next one.
+     * At most {@code maxPending} records are being verified or waiting for the records before them.
+     */
+    private static final class OrderedResults {
+        final LongAdder successCounter = new LongAdder();
+        final LongAdder failureCounter = new LongAdder();
+
+        private final Semaphore pending;
+        private final OrderedReporter<Result> reporter;
+
+        OrderedResults(int maxPending) {
+            this.pending = new Semaphore(maxPending);
+            this.reporter = new OrderedReporter<>(maxPending, result -> {
+                result.report();
+                if (result.success) {
+                    successCounter.increment();
+                } else {
+                    failureCounter.increment();
+                }
+                pending.release();
+            });
+        }
+
+        /**
+         * Waits until the results of {@code count} more records can be kept.
+         */
+        void acquire(int count) {
+            pending.acquireUninterruptibly(count);
+        }
+
+        /**
+         * Takes the sequence number of the next record. Must be called by the thread that reads the records.
+         */
+        long next() {
+            return reporter.next();
+        }
+
+        void complete(long sequence, Result result) {
+            reporter.publish(sequence, result);
+        }
+
+        long[] counters() {
+            if (!reporter.isDrained()) {
+                throw new AssertionError();
+            }
+            return new long[]{successCounter.sum(), failureCounter.sum()};
+        }
+    }
+
+    private static final class PendingRecord {
+        final long sequence;
+        final String line;
+        final Hasher hasher;
+
+        PendingRecord(long sequence, String line, Hasher hasher) {
+            this.sequence = sequence;
+            this.line = line;
+            this.hasher = hasher;
+        }
+    }
+
+    /**
+     * Groups the records into batches, so that each task verifies several files.
+     */
+    private static final class BatchSubmitter implements BiConsumer<String, Hasher> {
+        private final int batchSize;
+        private final OrderedResults results;
+        private final Consumer<List<PendingRecord>> action;
+        private List<PendingRecord> batch;
+
+        BatchSubmitter(int batchSize, OrderedResults results, Consumer<List<PendingRecord>> action) {
+            this.batchSize = batchSize;
+            this.results = results;
+            this.action = action;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void accept(String line, Hasher hasher) {
+            batch.add(new PendingRecord(results.next(), line, hasher));
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                final List<PendingRecord> batch = this.batch;
+                this.batch = new ArrayList<>(batchSize);
+                action.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * Checks the record and the file it refers to, including its size if the record has one,
+     * returns the file, or {@code null} if the check fails.
+     */
+    private static Path checkFile(Path basePath, HashRecord r, String line, Hasher hasher, Result result) {
+        if (r == null || !hasher.isAcceptChecksum(r.hash)) {
+            result.fail(Lang.getInstance().getInvalidHashRecordMessage(line));
+            return null;
+        }
+
         final Path file = basePath.resolve(r.file).toAbsolutePath();
-        if (Files.notExists(file)) {
-            Logger.error(Lang.getInstance().getFileNotExistMessage(file));
-            return false;
-        } else if (Files.isDirectory(file)) {
-            Logger.error(Lang.getInstance().getPathIsDirMessage(file));
-            return false;
+
+        // The attributes are read once, the checks below do not stat the file again
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            result.fail(Lang.getInstance().getFileNotExistMessage(file));
+            return null;
+        } catch (IOException e) {
+            result.fail(Lang.getInstance().getFileCannotBeReadMessage(file));
+            return null;
+        }
+
+        if (attrs.isDirectory()) {
+            result.fail(Lang.getInstance().getPathIsDirMessage(file));
+            return null;
         } else if (!Files.isReadable(file)) {
-            Logger.error(Lang.getInstance().getFileCannotBeReadMessage(file));
+            result.fail(Lang.getInstance().getFileCannotBeReadMessage(file));
+            return null;
+        }
+
+        // A truncated or grown file is rejected without reading it
+        if (r.size != HashRecord.UNKNOWN_SIZE && attrs.size() != r.size) {
+            result.fail(Lang.getInstance().getFileSizeNotMatchMessage(file, attrs.size(), r.size));
+            return null;
+        }
+        return file;
+    }
+
+    private static boolean checkHash(Path file, String fileHash, String recordHashValue, Result result) {
+        if (!recordHashValue.equalsIgnoreCase(fileHash)) {
+            return result.fail(Lang.getInstance().getHashNotMatchMessage(file, fileHash, recordHashValue));
+        }
+        return true;
+    }
+
+    /**
+     * Checks the hash computed by a task, {@code exception} is the exception of the task or {@code null}.
+     */
+    private static boolean checkHash(Path file, String fileHash, Throwable exception, String recordHashValue, Result result) {
+        if (exception != null) {
+            if (exception instanceof CompletionException && exception.getCause() != null) {
+                exception = exception.getCause();
+            }
+            return result.fail(Lang.getInstance().getHashErrorMessage(file), exception);
+        }
+        return checkHash(file, fileHash, recordHashValue, result);
+    }
+
+    private static String hashFile(Path file, Hasher hasher, IOMode ioMode, HashCache cache) throws IOException {
+        return cache != null ? cache.hashFile(file, ioMode, new Hasher[]{hasher})[0] : hasher.hashFile(file, ioMode);
+    }
+
+    private static CompletableFuture<String> submitToPipeline(HashPipeline pipeline, Path file, Hasher hasher, HashCache cache) {
+        final Hasher[] hashers = {hasher};
+        return (cache != null ? cache.hashFile(file, hashers, pipeline::submit) : pipeline.submit(file, hashers))
+                .thenApply(hashes -> hashes[0]);
+    }
+
+    private static boolean verifyFile(Path basePath, String line, Hasher hasher, IOMode ioMode, HashCache cache, Result result) {
+        final HashRecord r = HashRecord.of(line);
+        final Path file = checkFile(basePath, r, line, hasher, result);
+        if (file == null) {
             return false;
         }
 
         final String fileHash;
         try {
-            fileHash = hasher.hashFile(file);
+            fileHash = hashFile(file, hasher, ioMode, cache);
         } catch (IOException e) {
-            Logger.error(Lang.getInstance().getHashErrorMessage(file), e);
-            return false;
+            return result.fail(Lang.getInstance().getHashErrorMessage(file), e);
         }
 
-        if (!recordHashValue.equalsIgnoreCase(fileHash)) {
-            Logger.error(Lang.getInstance().getHashNotMatchMessage(file, fileHash, recordHashValue));
-            return false;
-        }
-        return true;
+        return checkHash(file, fileHash, r.hash, result);
     }
 
     private static void verify(BufferedReader reader, Hasher hasher, BiConsumer<String, Hasher> action) throws IOException, Exit {
@@ -102,23 +288,229 @@ public final class Verify {
         }
     }
 
-    public static void verify(Path basePath, BufferedReader reader, Hasher hasher, int numThreads) throws IOException, Exit {
+    /**
+     * Returns the attributes of the file, or {@code null} if they cannot be read, the error is reported when hashing.
+     */
+    private static BasicFileAttributes readAttributes(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads all records first, and hashes the files in the order of {@code options.order}.
+     * The whole checksums file is kept in memory, so {@code --max-pending} does not apply.
+     */
+    private static long[] verifySorted(Options options, BufferedReader reader, HashCache cache) throws IOException, Exit {
+        final Path basePath = options.basePath;
+        final IOMode ioMode = options.ioMode;
+
+        final HashPipeline pipeline = options.usePipeline() ? new HashPipeline(options.ioThreads, options.hashThreads) : null;
+        final DeviceScheduler devices = pipeline == null && options.perDevice() ? new DeviceScheduler(options::suggestNumThreads) : null;
+        final ExecutorService pool = pipeline == null && devices == null ? options.newExecutor() : null;
+        final FileOrderScheduler scheduler = new FileOrderScheduler(options.order);
+        final List<CompletableFuture<Result>> futures = new ArrayList<>();
+
+        long successCount = 0L;
+        long failureCount = 0L;
+
+        try {
+            verify(reader, options.algorithm, (line, actualHasher) -> {
+                final Result result = new Result();
+                final HashRecord r = HashRecord.of(line);
+                final Path file = checkFile(basePath, r, line, actualHasher, result);
+                if (file == null) {
+                    futures.add(CompletableFuture.completedFuture(result));
+                    return;
+                }
+
+                final BasicFileAttributes attrs = readAttributes(file);
+
+                futures.add(scheduler.<String>add(attrs != null ? options.order.keyOf(file, attrs) : 0L, () -> pipeline != null
+                        ? submitToPipeline(pipeline, file, actualHasher, cache)
+                        : devices != null
+                        ? devices.submit(file, () -> hashFile(file, actualHasher, ioMode, cache))
+                        : FileOrderScheduler.submit(pool, () -> hashFile(file, actualHasher, ioMode, cache))
+                ).handle((fileHash, exception) -> {
+                    result.success = checkHash(file, fileHash, exception, r.hash, result);
+                    return result;
+                }));
+            });
+            scheduler.dispatch();
+
+            // Report the results in the order of the checksums file
+            for (CompletableFuture<Result> future : futures) {
+                final Result result = future.join();
+                result.report();
+                if (result.success) {
+                    successCount++;
+                } else {
+                    failureCount++;
+                }
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+            } else if (devices != null) {
+                devices.shutdown();
+            } else {
+                pool.shutdown();
+            }
+        }
+
+        return new long[]{successCount, failureCount};
+    }
+
+    /**
+     * Returns the number of records verified by each task, so that each thread has at least two batches.
+     */
+    private static int batchSize(int maxPending, int numThreads) {
+        return Math.max(1, Math.min(MAX_BATCH_SIZE, maxPending / (numThreads * 2)));
+    }
+
+    /**
+     * Verifies the records in batches, each batch is checked by a task run by {@code executor},
+     * which starts hashing each file with {@code hash}, so the reader thread does not access the files.
+     * The results are reported in order by the threads that complete them.
+     */
+    private static void verifyAsync(
+            Options options, BufferedReader reader, OrderedResults results, int batchSize, Executor executor,
+            BiFunction<Path, Hasher, CompletableFuture<String>> hash) throws IOException, Exit {
+        final Path basePath = options.basePath;
+
+        final BatchSubmitter submitter = new BatchSubmitter(batchSize, results, batch -> {
+            results.acquire(batch.size());
+            executor.execute(() -> {
+                for (PendingRecord record : batch) {
+                    final Result result = new Result();
+                    try {
+                        final HashRecord r = HashRecord.of(record.line);
+                        final Path file = checkFile(basePath, r, record.line, record.hasher, result);
+                        if (file != null) {
+                            hash.apply(file, record.hasher).whenComplete((fileHash, exception) -> {
+                                result.success = checkHash(file, fileHash, exception, r.hash, result);
+                                results.complete(record.sequence, result);
+                            });
+                            continue;
+                        }
+                    } catch (Throwable e) {
+                        result.fail(Lang.getInstance().getHashErrorMessage(record.line), e);
+                    }
+                    results.complete(record.sequence, result);
+                }
+            });
+        });
+        verify(reader, options.algorithm, submitter);
+        submitter.flush();
+    }
+
+    public static void verify(Options options, BufferedReader reader) throws IOException, Exit {
+        final HashCache cache = options.cache || options.xattr ? HashCache.open(options.cache, options.xattr) : null;
+        final long[] counters;
+        try {
+            counters = verify(options, reader, cache);
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+
+        Logger.info(Lang.getInstance().getVerificationCompletedMessage(counters[0], counters[1]));
+
+        if (counters[1] > 0) {
+            throw Exit.error();
+        }
+    }
+
+    /**
+     * Verifies the records and reports the failures in the order of the checksums file.
+     *
+     * @param cache the hash cache of {@code --cache} and {@code --xattr}, or {@code null}
+     * @return the number of the records verified successfully and the number of the failures
+     */
+    static long[] verify(Options options, BufferedReader reader, HashCache cache) throws IOException, Exit {
+        final Path basePath = options.basePath;
+        final Hasher hasher = options.algorithm;
+        final int numThreads = options.numThreads;
+        final IOMode ioMode = options.ioMode;
+        final int maxPending = options.maxPending != null
+                ? options.maxPending
+                : DEFAULT_PENDING_PER_THREAD * (options.usePipeline() ? options.ioThreads + options.hashThreads : numThreads);
+
         long successCount;
         long failureCount;
 
-        if (numThreads > 1) {
-            final LongAdder successCounter = new LongAdder();
-            final LongAdder failureCounter = new LongAdder();
-            final ExecutorService pool = Executors.newFixedThreadPool(numThreads, new ChecksumThreadFactory());
+        if (options.order != FileOrder.FIFO) {
+            final long[] counters = verifySorted(options, reader, cache);
+            successCount = counters[0];
+            failureCount = counters[1];
+        } else if (options.perDevice()) {
+            // Hash the files of each storage device with the number of threads chosen for that device.
+            // The batches are checked on the pool of the base directory, which also hashes the files of its device,
+            // the files on other devices are submitted to their own pools
+            final OrderedResults results = new OrderedResults(maxPending);
+            final DeviceScheduler devices = new DeviceScheduler(options::suggestNumThreads);
+            final ExecutorService basePool = devices.poolOf(basePath);
+            try {
+                verifyAsync(options, reader, results, batchSize(maxPending, numThreads), basePool, (file, actualHasher) ->
+                        devices.submit(file, () -> hashFile(file, actualHasher, ioMode, cache)));
+
+                // The batches may still submit files to the pools of other devices until they are done
+                basePool.shutdown();
+                if (!basePool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    throw new AssertionError();
+                }
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            } finally {
+                devices.shutdown();
+            }
 
             try {
-                verify(reader, hasher, (line, actualHasher) -> pool.submit(() -> {
-                    if (verifyFile(basePath, line, actualHasher)) {
-                        successCounter.increment();
-                    } else {
-                        failureCounter.increment();
-                    }
-                }));
+                devices.awaitTermination();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+
+            final long[] counters = results.counters();
+            successCount = counters[0];
+            failureCount = counters[1];
+        } else if (options.usePipeline()) {
+            final OrderedResults results = new OrderedResults(maxPending);
+            try (HashPipeline pipeline = new HashPipeline(options.ioThreads, options.hashThreads)) {
+                // The records are checked by the I/O threads, which read the files right after checking them
+                verifyAsync(options, reader, results, batchSize(maxPending, options.ioThreads), pipeline::execute,
+                        (file, actualHasher) -> submitToPipeline(pipeline, file, actualHasher, cache));
+            }
+
+            final long[] counters = results.counters();
+            successCount = counters[0];
+            failureCount = counters[1];
+        } else if (numThreads > 1 || options.virtualThreads) {
+            final OrderedResults results = new OrderedResults(maxPending);
+            final ExecutorService pool = options.newExecutor();
+
+            final int batchSize = batchSize(maxPending, numThreads);
+
+            try {
+                final BatchSubmitter submitter = new BatchSubmitter(batchSize, results, batch -> {
+                    results.acquire(batch.size());
+                    pool.execute(() -> {
+                        for (PendingRecord record : batch) {
+                            final Result result = new Result();
+                            try {
+                                result.success = verifyFile(basePath, record.line, record.hasher, ioMode, cache, result);
+                            } catch (Throwable e) {
+                                result.success = result.fail(Lang.getInstance().getHashErrorMessage(record.line), e);
+                            }
+                            results.complete(record.sequence, result);
+                        }
+                    });
+                });
+                verify(reader, hasher, submitter);
+                submitter.flush();
             } finally {
                 pool.shutdown();
             }
@@ -131,14 +523,17 @@ public final class Verify {
                 throw new AssertionError(e);
             }
 
-            successCount = successCounter.sum();
-            failureCount = failureCounter.sum();
+            final long[] counters = results.counters();
+            successCount = counters[0];
+            failureCount = counters[1];
         } else {
             long[] counters = new long[2];
             verify(reader, hasher, (line, actualHasher) -> {
-                if (verifyFile(basePath, line, actualHasher)) {
+                final Result result = new Result();
+                if (verifyFile(basePath, line, actualHasher, ioMode, cache, result)) {
                     counters[0]++;
                 } else {
+                    result.report();
                     counters[1]++;
                 }
             });
@@ -146,16 +541,17 @@ public final class Verify {
             failureCount = counters[1];
         }
 
-        Logger.info(Lang.getInstance().getVerificationCompletedMessage(successCount, failureCount));
-
-        if (failureCount > 0) {
-            throw Exit.error();
-        }
+        return new long[]{successCount, failureCount};
     }
 
     public static void verify(Iterator<String> args) throws IOException, Exit {
         Options options = new Options(args);
 
+        if (options.algorithms != null && options.algorithms.length > 1) {
+            Logger.error(Lang.getInstance().getMultipleAlgorithmsVerifyMessage());
+            throw Exit.error();
+        }
+
         BufferedReader reader;
         if ("-".equals(options.checksumsFile)) {
             reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
@@ -171,7 +567,7 @@ public final class Verify {
             reader = Files.newBufferedReader(cf);
         }
         try (reader) {
-            Verify.verify(options.basePath, reader, options.algorithm, options.numThreads);
+            Verify.verify(options, reader);
         }
     }
 }
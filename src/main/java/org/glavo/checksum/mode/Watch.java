@@ -0,0 +1,532 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.mode;
+
+import org.glavo.checksum.Exit;
+import org.glavo.checksum.Options;
+import org.glavo.checksum.hash.HashCache;
+import org.glavo.checksum.hash.HashPipeline;
+import org.glavo.checksum.hash.Hasher;
+import org.glavo.checksum.hash.IOMode;
+import org.glavo.checksum.path.ArrayPathComparator;
+import org.glavo.checksum.util.HashRecord;
+import org.glavo.checksum.util.Lang;
+import org.glavo.checksum.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the checksums file up to date while the directory changes.
+ * <p>
+ * All directories of the tree are registered with a {@link WatchService}. The changed paths are collected until
+ * no event has arrived for the debounce interval, then only the created or modified files are hashed again,
+ * and the checksums file is replaced atomically. When the events overflow, or too many paths are pending,
+ * the whole tree is scanned again, which still hashes only the files whose size or times have changed.
+ * The size and times are also written to the metadata file of {@code --incremental}, whether or not the option is given,
+ * so a restarted watch only hashes the files that have changed while it was stopped.
+ */
+public final class Watch implements Closeable {
+    private static final int DEFAULT_DEBOUNCE_SECONDS = 2;
+
+    /**
+     * The changes are processed at the latest this many debounce intervals after the first one,
+     * even if the events never stop.
+     */
+    private static final int MAX_DELAY_INTERVALS = 10;
+
+    /**
+     * When more paths than this are pending, they are dropped and the whole tree is scanned again,
+     * so the memory does not grow with the number of events.
+     */
+    private static final int MAX_PENDING_PATHS = 65536;
+
+    private static final class Entry {
+        final String[] hashes;
+
+        /**
+         * The metadata of the file before it was hashed, or {@code null} if the hashes were read from the checksums file.
+         */
+        final FileMetadata metadata;
+
+        /**
+         * The time the file was hashed.
+         */
+        final long time;
+
+        Entry(String[] hashes, FileMetadata metadata, long time) {
+            this.hashes = hashes;
+            this.metadata = metadata;
+            this.time = time;
+        }
+    }
+
+    private static final class PendingFile {
+        final String[] pathArray;
+        final FileMetadata metadata;
+        final long time;
+        final Future<String[]> future;
+
+        PendingFile(String[] pathArray, FileMetadata metadata, long time, Future<String[]> future) {
+            this.pathArray = pathArray;
+            this.metadata = metadata;
+            this.time = time;
+            this.future = future;
+        }
+    }
+
+    private final Options options;
+    private final Path basePath;
+    private final Hasher[] hashers;
+    private final IOMode ioMode;
+    private final Path[] checksumsFiles;
+    private final Path metadataFile;
+    private final boolean recordSizes;
+    private final HashCache cache;
+    private final HashPipeline pipeline;
+    private final ExecutorService pool;
+    private final Set<Path> excludes = new HashSet<>();
+    private final long debounce;
+
+    private final TreeMap<String[], Entry> records = new TreeMap<>(ArrayPathComparator.INSTANCE);
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> pending = new LinkedHashSet<>();
+    private boolean rescan = true;
+
+    /**
+     * The number of files submitted to be hashed by the last {@link #process()}.
+     */
+    int hashedFiles;
+
+    /**
+     * @param recordSizes whether the sizes of the files are recorded
+     * @param cache       the hash cache of {@code --cache} and {@code --xattr}, or {@code null}
+     */
+    Watch(Options options, Path[] checksumsFiles, boolean recordSizes, HashCache cache, WatchService watchService) {
+        this.options = options;
+        this.basePath = options.basePath;
+        this.hashers = options.algorithms;
+        this.ioMode = options.ioMode;
+        this.checksumsFiles = checksumsFiles;
+        // The metadata file of --incremental is always kept, so a restarted watch does not hash the unchanged files again
+        this.metadataFile = FileMetadata.sidecarOf(Paths.get(options.checksumsFile).toAbsolutePath());
+        this.recordSizes = recordSizes;
+        this.cache = cache;
+        this.debounce = TimeUnit.SECONDS.toNanos(options.debounce != null ? options.debounce : DEFAULT_DEBOUNCE_SECONDS);
+        this.watchService = watchService;
+
+        for (Path file : checksumsFiles) {
+            excludes.add(file);
+            excludes.add(tempFileOf(file));
+        }
+        excludes.add(metadataFile);
+        excludes.add(tempFileOf(metadataFile));
+        if (cache != null) {
+            Collections.addAll(excludes, cache.getFiles());
+        }
+
+        // The threads are kept while watching, rather than started again for every change
+        this.pipeline = options.usePipeline() ? new HashPipeline(options.ioThreads, options.hashThreads) : null;
+        this.pool = pipeline == null ? options.newExecutor() : null;
+    }
+
+    private static Path tempFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    private static String[] pathArrayOf(String path) {
+        return path.split("/");
+    }
+
+    private String[] pathArrayOf(Path file) {
+        final Path relative = basePath.relativize(file);
+        final String[] pathArray = new String[relative.getNameCount()];
+        for (int i = 0; i < pathArray.length; i++) {
+            pathArray[i] = relative.getName(i).toString();
+        }
+        return pathArray;
+    }
+
+    private static boolean startsWith(String[] pathArray, String[] prefix) {
+        if (pathArray.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (!pathArray[i].equals(prefix[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the existing records of each algorithm, and the metadata recorded with them.
+     * The records without valid metadata are hashed again by the first {@link #process()}.
+     */
+    void load(List<Map<String, String>> old) throws IOException {
+        final Map<String, FileMetadata> metadata = new HashMap<>();
+        long recordTime = -1L;
+        if (!options.paranoid && Files.isRegularFile(metadataFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(metadataFile)) {
+                recordTime = FileMetadata.read(reader, metadata);
+            }
+        }
+
+        records:
+        for (Map.Entry<String, String> record : old.get(0).entrySet()) {
+            final String[] hashes = new String[hashers.length];
+            for (int i = 0; i < hashers.length; i++) {
+                if ((hashes[i] = old.get(i).get(record.getKey())) == null) {
+                    continue records; // The file will be hashed again
+                }
+            }
+            records.put(pathArrayOf(record.getKey()), new Entry(hashes, recordTime >= 0 ? metadata.get(record.getKey()) : null, recordTime));
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        Files.walkFileTree(dir, Collections.singleton(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                try {
+                    keys.put(dir.register(watchService,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY,
+                            StandardWatchEventKinds.ENTRY_DELETE), dir);
+                } catch (IOException e) {
+                    Logger.error(Lang.getInstance().getHashErrorMessage(dir), e);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE; // Reported when the tree is scanned
+            }
+        });
+    }
+
+    void addPending(Path path) {
+        if (rescan) {
+            return;
+        }
+        if (pending.size() >= MAX_PENDING_PATHS) {
+            pending.clear();
+            rescan = true;
+        } else {
+            pending.add(path);
+        }
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        final Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                pending.clear();
+                rescan = true;
+                continue;
+            }
+
+            final Path child = dir.resolve((Path) event.context());
+            if (excludes.contains(child)) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                // The files created before the directory is registered are found when it is scanned
+                register(child);
+            }
+            addPending(child);
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    private void submit(List<PendingFile> files, String[] pathArray, Path file, BasicFileAttributes attrs) {
+        final FileMetadata metadata = FileMetadata.of(file, attrs);
+        final Entry entry = records.get(pathArray);
+        if (entry != null && entry.metadata != null && entry.metadata.isUnchanged(metadata, entry.time)) {
+            return;
+        }
+
+        final long time = FileMetadata.now();
+        hashedFiles++;
+        files.add(new PendingFile(pathArray, metadata, time, pipeline != null
+                ? CreateOrUpdate.submitToPipeline(pipeline, file, hashers, cache)
+                : pool.submit(() -> CreateOrUpdate.hashFile(file, ioMode, hashers, cache))));
+    }
+
+    /**
+     * Submits the files in the directory, and removes the records of the files under it that no longer exist.
+     */
+    private void scan(List<PendingFile> files, Path dir, String[] prefix, List<String[]> removed) throws IOException {
+        final Set<String[]> seen = new TreeSet<>(ArrayPathComparator.INSTANCE);
+        Files.walkFileTree(dir, Collections.singleton(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!excludes.contains(file)) {
+                    if (attrs.isRegularFile() && Files.isReadable(file)) {
+                        final String[] pathArray = pathArrayOf(file);
+                        seen.add(pathArray);
+                        submit(files, pathArray, file, attrs);
+                    } else {
+                        Logger.error(Lang.getInstance().getFileCannotBeReadMessage(file));
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                Logger.error(Lang.getInstance().getHashErrorMessage(file), e);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        for (String[] pathArray : records.keySet()) {
+            if (startsWith(pathArray, prefix) && !seen.contains(pathArray)) {
+                removed.add(pathArray);
+            }
+        }
+    }
+
+    /**
+     * Hashes the changed files, and returns {@code true} if the records have changed.
+     */
+    boolean process() throws IOException {
+        final List<PendingFile> files = new ArrayList<>();
+        final List<String[]> removed = new ArrayList<>();
+        hashedFiles = 0;
+
+        if (rescan) {
+            rescan = false;
+            pending.clear();
+            // The directories created while the events were lost have not been registered
+            register(basePath);
+            scan(files, basePath, new String[0], removed);
+        } else {
+            for (Path path : pending) {
+                final String[] pathArray = pathArrayOf(path);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    attrs = null; // The file has been deleted
+                }
+
+                if (attrs != null && attrs.isDirectory()) {
+                    scan(files, path, pathArray, removed);
+                } else if (attrs != null && attrs.isRegularFile() && Files.isReadable(path)) {
+                    submit(files, pathArray, path, attrs);
+                } else {
+                    for (String[] recorded : records.keySet()) {
+                        if (startsWith(recorded, pathArray)) {
+                            removed.add(recorded);
+                        }
+                    }
+                }
+            }
+            pending.clear();
+        }
+
+        boolean changed = false;
+        for (String[] pathArray : removed) {
+            if (records.remove(pathArray) != null) {
+                Logger.info(Lang.getInstance().getFileRecordBeRemoved(String.join("/", pathArray)));
+                changed = true;
+            }
+        }
+
+        for (PendingFile file : files) {
+            final String[] hashes;
+            try {
+                hashes = file.future.get();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            } catch (ExecutionException e) {
+                Logger.error(Lang.getInstance().getHashErrorMessage(String.join("/", file.pathArray)), e.getCause());
+                continue;
+            }
+
+            final Entry old = records.put(file.pathArray, new Entry(hashes, file.metadata, file.time));
+            if (old == null) {
+                Logger.info(Lang.getInstance().getNewFileBeRecordedMessage(String.join("/", file.pathArray)));
+                changed = true;
+            } else if (!Arrays.equals(old.hashes, hashes)) {
+                Logger.info(Lang.getInstance().getFileHashUpdatedMessage(String.join("/", file.pathArray), hashes[0], old.hashes[0]));
+                changed = true;
+            } else if (recordSizes && (old.metadata == null || old.metadata.size != file.metadata.size)) {
+                changed = true;
+            } else if (old.metadata == null || old.metadata.mtime != file.metadata.mtime) {
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the file through a temporary file, so the readers see either the old or the new file.
+     */
+    private static void replace(Path file, WriterAction action) throws IOException {
+        final Path tempFile = tempFileOf(file);
+        try (Writer writer = Files.newBufferedWriter(tempFile)) {
+            action.write(writer);
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WriterAction {
+        void write(Writer writer) throws IOException;
+    }
+
+    void write() throws IOException {
+        for (int i = 0; i < hashers.length; i++) {
+            final int index = i;
+            replace(checksumsFiles[i], writer -> {
+                for (Map.Entry<String[], Entry> record : records.entrySet()) {
+                    final FileMetadata metadata = record.getValue().metadata;
+                    final long size = recordSizes && metadata != null ? metadata.size : HashRecord.UNKNOWN_SIZE;
+                    CreateOrUpdate.doCreate(record.getKey(), record.getValue().hashes[index], size, writer);
+                }
+            });
+        }
+
+        replace(metadataFile, writer -> {
+            FileMetadata.writeHeader(writer, FileMetadata.now());
+            for (Map.Entry<String[], Entry> record : records.entrySet()) {
+                final Entry entry = record.getValue();
+                // The files modified shortly before they were hashed are not recorded, they are hashed again
+                if (entry.metadata != null && entry.metadata.isUnchanged(entry.metadata, entry.time)) {
+                    entry.metadata.write(writer, String.join("/", record.getKey()));
+                }
+            }
+        });
+
+        if (cache != null) {
+            // The watch is stopped by killing the process, so the cache is not closed
+            cache.sync();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pipeline != null) {
+            pipeline.close();
+        } else {
+            pool.shutdown();
+        }
+    }
+
+    private void run() throws IOException {
+        process();
+        write();
+        Logger.info(Lang.getInstance().getWatchingMessage(basePath));
+
+        long firstEvent = 0L;
+        long lastEvent = 0L;
+        while (true) {
+            final WatchKey key;
+            try {
+                if (pending.isEmpty() && !rescan) {
+                    key = watchService.take();
+                } else {
+                    final long deadline = Math.min(lastEvent + debounce, firstEvent + MAX_DELAY_INTERVALS * debounce);
+                    key = watchService.poll(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            if (key != null) {
+                final boolean idle = pending.isEmpty() && !rescan;
+                handle(key);
+                lastEvent = System.nanoTime();
+                if (idle) {
+                    firstEvent = lastEvent;
+                }
+            } else if (process()) {
+                write();
+            }
+        }
+    }
+
+    public static void watch(Iterator<String> args) throws IOException, Exit {
+        final Options options = new Options(args);
+
+        if (options.algorithm == null) {
+            options.algorithm = Hasher.getDefault();
+            options.algorithms = new Hasher[]{options.algorithm};
+        }
+        if ("-".equals(options.checksumsFile)) {
+            Logger.error(Lang.getInstance().getInvalidOptionValueMessage("-f", "-"));
+            throw Exit.error();
+        }
+        // The changed files are hashed as they are found, the order of a scan does not matter
+        if (options.stream) {
+            Logger.error(Lang.getInstance().getOptionMixedMessage("--stream", "watch"));
+            throw Exit.error();
+        }
+        if (options.order != FileOrder.FIFO) {
+            Logger.error(Lang.getInstance().getOptionMixedMessage("--order", "watch"));
+            throw Exit.error();
+        }
+
+        final Hasher[] hashers = options.algorithms;
+        final boolean multiple = hashers.length > 1;
+        final Path[] files = new Path[hashers.length];
+        final List<Map<String, String>> old = new ArrayList<>(hashers.length);
+        boolean recordSizes = options.size;
+        for (int i = 0; i < hashers.length; i++) {
+            final Path cf = CreateOrUpdate.checksumsFileOf(options.checksumsFile, hashers[i], multiple);
+            final Map<String, String> records = new HashMap<>();
+            if (CreateOrUpdate.prepare(options, cf, hashers[i], true, records)) {
+                // Keep recording the sizes
+                recordSizes = true;
+            }
+            old.add(records);
+            files[i] = cf;
+        }
+
+        final HashCache cache = options.cache || options.xattr ? HashCache.open(options.cache, options.xattr) : null;
+        try (WatchService watchService = options.basePath.getFileSystem().newWatchService();
+             Watch watch = new Watch(options, files, recordSizes, cache, watchService)) {
+            watch.load(old);
+            watch.run();
+        } finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+}
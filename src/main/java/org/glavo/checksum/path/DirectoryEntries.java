@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.path;
+
+import org.glavo.checksum.util.Lang;
+import org.glavo.checksum.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Helpers shared by the file walkers, they follow symbolic links like {@code Files.walkFileTree}
+ * with {@link java.nio.file.FileVisitOption#FOLLOW_LINKS}.
+ */
+final class DirectoryEntries {
+    private DirectoryEntries() {
+    }
+
+    /**
+     * Reads the attributes of the entry, following symbolic links. The attributes of a broken link are the ones
+     * of the link itself. Returns {@code null} and reports the error if the attributes cannot be read.
+     */
+    static BasicFileAttributes readAttributes(Path entry) {
+        try {
+            return Files.readAttributes(entry, BasicFileAttributes.class);
+        } catch (IOException e) {
+            try {
+                return Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException ignored) {
+                Logger.error(Lang.getInstance().getHashErrorMessage(entry), e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * The chain of directories from the root to a directory, used to detect file system loops.
+     */
+    static final class Ancestor {
+        final Path dir;
+        final Object fileKey;
+        final Ancestor parent;
+
+        static Ancestor root(Path dir) {
+            Object fileKey = null;
+            try {
+                fileKey = Files.readAttributes(dir, BasicFileAttributes.class).fileKey();
+            } catch (IOException ignored) {
+            }
+            return new Ancestor(dir, fileKey, null);
+        }
+
+        Ancestor(Path dir, Object fileKey, Ancestor parent) {
+            this.dir = dir;
+            this.fileKey = fileKey;
+            this.parent = parent;
+        }
+
+        boolean contains(Path dir, Object fileKey) {
+            for (Ancestor ancestor = this; ancestor != null; ancestor = ancestor.parent) {
+                if (fileKey != null && ancestor.fileKey != null) {
+                    if (fileKey.equals(ancestor.fileKey)) {
+                        return true;
+                    }
+                } else {
+                    try {
+                        if (Files.isSameFile(dir, ancestor.dir)) {
+                            return true;
+                        }
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
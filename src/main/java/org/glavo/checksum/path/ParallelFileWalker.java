@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.path;
+
+import org.glavo.checksum.path.DirectoryEntries.Ancestor;
+import org.glavo.checksum.util.Lang;
+import org.glavo.checksum.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walks a directory tree with a fork/join task for each directory, so subdirectories are enumerated concurrently,
+ * and submits each regular file as soon as it is found.
+ * <p>
+ * Symbolic links are followed like {@code Files.walkFileTree} with {@link FileVisitOption#FOLLOW_LINKS}:
+ * a link that points back to one of its ancestors is reported as a file system loop,
+ * and a broken link is reported as a file that cannot be read.
+ * The results are collected in a map sorted by {@link ArrayPathComparator}, so the order does not depend on the
+ * order in which the files are found.
+ */
+public abstract class ParallelFileWalker<T> {
+    public final ConcurrentSkipListMap<String[], T> result = new ConcurrentSkipListMap<>(ArrayPathComparator.INSTANCE);
+
+    private final Set<Path> excludes;
+
+    protected ParallelFileWalker(Set<Path> excludes) {
+        this.excludes = excludes;
+    }
+
+    /**
+     * Called concurrently by the walker threads for each readable regular file.
+     *
+     * @param path the names of the file and its parent directories relative to the root
+     */
+    protected abstract T submit(String[] path, Path file, BasicFileAttributes attrs);
+
+    public final void walk(Path root, int numThreads) {
+        // Not a checksum pool, the walker threads only list directories and must not split the hashing of files
+        final ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            pool.invoke(new DirectoryTask(root, new String[0], Ancestor.root(root)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void visitFile(Path file, String[] path, BasicFileAttributes attrs) {
+        if (!excludes.contains(file)) {
+            if (attrs.isRegularFile() && Files.isReadable(file)) {
+                result.put(path, submit(path, file, attrs));
+            } else {
+                Logger.error(Lang.getInstance().getFileCannotBeReadMessage(file));
+            }
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final Path dir;
+        private final String[] path;
+        private final Ancestor ancestors;
+
+        DirectoryTask(Path dir, String[] path, Ancestor ancestors) {
+            this.dir = dir;
+            this.path = path;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected void compute() {
+            final List<DirectoryTask> subtasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    final BasicFileAttributes attrs = DirectoryEntries.readAttributes(entry);
+                    if (attrs == null) {
+                        continue;
+                    }
+
+                    final String[] entryPath = Arrays.copyOf(path, path.length + 1);
+                    entryPath[path.length] = Objects.toString(entry.getFileName());
+
+                    if (attrs.isDirectory()) {
+                        if (ancestors.contains(entry, attrs.fileKey())) {
+                            Logger.error(Lang.getInstance().getHashErrorMessage(entry), new FileSystemLoopException(entry.toString()));
+                        } else {
+                            subtasks.add(new DirectoryTask(entry, entryPath, new Ancestor(entry, attrs.fileKey(), ancestors)));
+                        }
+                    } else {
+                        visitFile(entry, entryPath, attrs);
+                    }
+                }
+            } catch (IOException e) {
+                Logger.error(Lang.getInstance().getHashErrorMessage(dir), e);
+            } catch (DirectoryIteratorException e) {
+                Logger.error(Lang.getInstance().getHashErrorMessage(dir), e.getCause());
+            }
+
+            invokeAll(subtasks);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.path;
+
+import org.glavo.checksum.path.DirectoryEntries.Ancestor;
+import org.glavo.checksum.util.Lang;
+import org.glavo.checksum.util.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Walks a directory tree and visits the files in the order defined by {@link ArrayPathComparator},
+ * without collecting the paths of the whole tree.
+ * <p>
+ * In that order, the files of a directory come before the files of its subdirectories,
+ * and the subdirectories are visited in the order of their names.
+ * So it is enough to keep the sorted entries of the directories on the current path.
+ * <p>
+ * Symbolic links are followed like {@link ParallelFileWalker}.
+ */
+public abstract class SortedFileWalker {
+    private static final Comparator<Entry> ENTRY_COMPARATOR = Comparator.comparing(entry -> entry.name);
+
+    private final Set<Path> excludes;
+
+    protected SortedFileWalker(Set<Path> excludes) {
+        this.excludes = excludes;
+    }
+
+    /**
+     * Called for each readable regular file, in sorted order, with the attributes read when its directory was listed.
+     */
+    protected abstract void visitFile(String[] path, Path file, BasicFileAttributes attrs) throws IOException;
+
+    public final void walk(Path root) throws IOException {
+        walk(root, new String[0], Ancestor.root(root));
+    }
+
+    private static final class Entry {
+        final String name;
+        final Path file;
+        final BasicFileAttributes attrs;
+
+        Entry(String name, Path file, BasicFileAttributes attrs) {
+            this.name = name;
+            this.file = file;
+            this.attrs = attrs;
+        }
+    }
+
+    private void walk(Path dir, String[] path, Ancestor ancestors) throws IOException {
+        final List<Entry> files = new ArrayList<>();
+        final List<Entry> dirs = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                final BasicFileAttributes attrs = DirectoryEntries.readAttributes(entry);
+                if (attrs != null) {
+                    (attrs.isDirectory() ? dirs : files).add(new Entry(Objects.toString(entry.getFileName()), entry, attrs));
+                }
+            }
+        } catch (IOException e) {
+            Logger.error(Lang.getInstance().getHashErrorMessage(dir), e);
+            return;
+        } catch (DirectoryIteratorException e) {
+            Logger.error(Lang.getInstance().getHashErrorMessage(dir), e.getCause());
+            return;
+        }
+
+        files.sort(ENTRY_COMPARATOR);
+        for (Entry entry : files) {
+            if (!excludes.contains(entry.file)) {
+                if (entry.attrs.isRegularFile() && Files.isReadable(entry.file)) {
+                    visitFile(childPath(path, entry.name), entry.file, entry.attrs);
+                } else {
+                    Logger.error(Lang.getInstance().getFileCannotBeReadMessage(entry.file));
+                }
+            }
+        }
+        files.clear();
+
+        dirs.sort(ENTRY_COMPARATOR);
+        for (Entry entry : dirs) {
+            final Object fileKey = entry.attrs.fileKey();
+            if (ancestors.contains(entry.file, fileKey)) {
+                Logger.error(Lang.getInstance().getHashErrorMessage(entry.file), new FileSystemLoopException(entry.file.toString()));
+            } else {
+                walk(entry.file, childPath(path, entry.name), new Ancestor(entry.file, fileKey, ancestors));
+            }
+        }
+    }
+
+    private static String[] childPath(String[] path, String name) {
+        final String[] result = Arrays.copyOf(path, path.length + 1);
+        result[path.length] = name;
+        return result;
+    }
+}
@@ -16,14 +16,41 @@
 
 package org.glavo.checksum.util;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public final class ChecksumThreadFactory implements ThreadFactory {
+public final class ChecksumThreadFactory implements ThreadFactory, ForkJoinPool.ForkJoinWorkerThreadFactory {
     private final AtomicInteger threadNumber = new AtomicInteger(1);
 
     @Override
     public Thread newThread(Runnable r) {
         return new Thread(r, "checksum-thread-" + threadNumber.getAndIncrement());
     }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("checksum-thread-" + threadNumber.getAndIncrement());
+        return thread;
+    }
+
+    /**
+     * Creates the checksum pool. It is a {@link ForkJoinPool} so that a task can split the hashing of a large file
+     * into subtasks that run on the same pool.
+     */
+    public static ForkJoinPool newPool(int numThreads) {
+        return new ForkJoinPool(numThreads, new ChecksumThreadFactory(), null, false);
+    }
+
+    /**
+     * Returns {@code true} if the current thread is a worker of a pool created by {@link #newPool},
+     * other fork/join pools (e.g. the common pool) are not sized for splitting the hashing of a file.
+     */
+    public static boolean inChecksumPool() {
+        final ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool != null && pool.getFactory() instanceof ChecksumThreadFactory;
+    }
 }
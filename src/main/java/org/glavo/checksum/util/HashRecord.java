@@ -18,7 +18,13 @@ package org.glavo.checksum.util;
 
 import java.util.Objects;
 
+/**
+ * A record of the checksums file, {@code <hash>  <file>}, or {@code <hash> <size>  <file>} when the size of the file
+ * is recorded. The size is separated from the hash by a single space and from the file by two spaces,
+ * so a file name that starts with digits is not mistaken for a size.
+ */
 public final class HashRecord {
+    public static final long UNKNOWN_SIZE = -1L;
 
     public static HashRecord of(String line) {
         final int rLength = line.length();
@@ -28,19 +34,46 @@ public final class HashRecord {
             return null;
         }
 
-        for (int i = idx + 1; i < rLength; i++) {
+        int begin = idx + 1;
+        long size = UNKNOWN_SIZE;
+        if (line.charAt(begin) != ' ') {
+            int end = begin;
+            while (end < rLength && line.charAt(end) >= '0' && line.charAt(end) <= '9') {
+                end++;
+            }
+            // The size is followed by exactly two spaces, otherwise the digits are a part of the file name
+            if (end > begin && end + 2 < rLength
+                    && line.charAt(end) == ' ' && line.charAt(end + 1) == ' ' && line.charAt(end + 2) != ' ') {
+                try {
+                    size = Long.parseLong(line.substring(begin, end));
+                    begin = end + 2;
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+
+        for (int i = begin; i < rLength; i++) {
             if (line.charAt(i) != ' ') {
-                return new HashRecord(line.substring(0, idx), line.substring(i));
+                return new HashRecord(line.substring(0, idx), size, line.substring(i));
             }
         }
         return null;
     }
 
     public final String hash;
+    public final long size;
     public final String file;
 
     public HashRecord(String hash, String file) {
+        this(hash, UNKNOWN_SIZE, file);
+    }
+
+    /**
+     * @param size the size of the file, or {@link #UNKNOWN_SIZE} if it is not recorded
+     */
+    public HashRecord(String hash, long size, String file) {
         this.hash = hash;
+        this.size = size;
         this.file = file;
     }
 
@@ -53,17 +86,17 @@ public final class HashRecord {
             return false;
         }
         HashRecord hashRecord = (HashRecord) o;
-        return Objects.equals(hash, hashRecord.hash) && Objects.equals(file, hashRecord.file);
+        return Objects.equals(hash, hashRecord.hash) && size == hashRecord.size && Objects.equals(file, hashRecord.file);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(hash) ^ Objects.hashCode(file);
+        return Objects.hashCode(hash) ^ Long.hashCode(size) ^ Objects.hashCode(file);
     }
 
     @Override
     public String toString() {
-        return hash + "  " + file;
+        return size == UNKNOWN_SIZE ? hash + "  " + file : hash + " " + size + "  " + file;
     }
 
 }
@@ -18,7 +18,12 @@ package org.glavo.checksum.util;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.LinkOption;
 import java.nio.file.attribute.FileAttribute;
@@ -27,10 +32,65 @@ import java.util.Locale;
 public final class IOUtils {
     public static final int DEFAULT_BUFFER_SIZE = 320 * 1024; // 320 KiB
 
+    public static final int BUFFER_ALIGNMENT = 4096;
+
+    private static final boolean USE_DIRECT_BUFFER = !"false".equalsIgnoreCase(System.getProperty("org.glavo.checksum.buffer.direct"));
+
     public static final FileAttribute<?>[] EMPTY_FILE_ATTRIBUTES = new FileAttribute[0];
 
     public static final LinkOption[] EMPTY_LINK_OPTIONS = new LinkOption[0];
 
+    /**
+     * {@code sun.misc.Unsafe::invokeCleaner} bound to the instance of {@code Unsafe}, or {@code null} if it is not available.
+     */
+    private static final MethodHandle INVOKE_CLEANER;
+
+    static {
+        MethodHandle invokeCleaner = null;
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner = MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (Throwable ignored) {
+        }
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * Allocates a read buffer. Unless disabled by the {@code org.glavo.checksum.buffer.direct} system property,
+     * the buffer is a direct buffer aligned to {@link #BUFFER_ALIGNMENT},
+     * so channels can read into it without copying through a temporary direct buffer.
+     */
+    public static ByteBuffer allocateBuffer(int capacity) {
+        if (USE_DIRECT_BUFFER) {
+            return ByteBuffer.allocateDirect(capacity + BUFFER_ALIGNMENT)
+                    .alignedSlice(BUFFER_ALIGNMENT)
+                    .limit(capacity)
+                    .slice();
+        } else {
+            return ByteBuffer.allocate(capacity);
+        }
+    }
+
+    /**
+     * Unmaps the buffer immediately instead of waiting for it to be collected, so a long run does not keep
+     * the address space and the mapped files (locked on Windows) alive after they have been hashed.
+     * If unmapping is not supported, the buffer is left to the GC.
+     * <p>
+     * The buffer and its views must not be accessed after this method is called.
+     */
+    public static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
     public static boolean readChoice() throws IOException {
         StringBuilder lineBuilder = new StringBuilder();
         int ch;
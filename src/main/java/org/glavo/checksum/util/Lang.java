@@ -58,6 +58,7 @@ public enum Lang {
                    "    gchecksum c(reate) [选项]     : 创建校验文件\n" +
                    "    gchecksum v(erify) [选项]     : 使用校验文件对文件进行验证\n" +
                    "    gchecksum u(pdate) [选项]     : 更新已存在的校验文件, 打印目录发生的变更\n" +
+                   "    gchecksum w(atch) [选项]      : 监视目录, 在文件变化后持续更新校验文件\n" +
                    "\n" +
                    "    gchecksum hash [选项] <文件>   : 计算并打印文件哈希\n" +
                    "\n" +
@@ -68,15 +69,39 @@ public enum Lang {
                    "    -f <checksums file>     指定校验文件路径 (默认为 checksums.txt, 使用 '-' 指定为标准输入/输出流)\n" +
                    "    -d <directory>          指定要验证的文件夹 (默认值为当前工作路径)\n" +
                    "    -y --yes --assume-yes   静默覆盖已存在的 checksums 文件\n" +
-                   "    -a --algorithm   <algorithm>\n" +
+                   "    -a --algorithm   <algorithm>[,<algorithm>...]\n" +
                    "                            指定将使用的哈希算法 (创建和更新模式下默认为 SHA-256, 校验模式下默认根据哈希值长度自动选择)\n" +
-                   "    -n --num-threads <num threads>\n" +
-                   "                            指定计算哈希值的并发线程数 (默认值为 4)";
+                   "                            创建和更新模式下可以用逗号分隔多个算法, 只读取一次文件, 并为每个算法写入单独的校验文件\n" +
+                   "    -n --num-threads <num threads|auto>\n" +
+                   "                            指定计算哈希值的并发线程数 (默认值为 auto, 根据存储设备类型, CPU 核心数和哈希算法自动选择,\n" +
+                   "                            并为符号链接指向的每个存储设备分别选择线程数)\n" +
+                   "    --io-threads   <num threads>\n" +
+                   "    --hash-threads <num threads>\n" +
+                   "                            分别指定读取文件和计算哈希值的线程数, 读取与计算在不同线程上并行进行\n" +
+                   "                            (只指定其中一个时, 另一个默认与 -n 相同, 不能与 --io mmap/auto 混用)\n" +
+                   "    --virtual-threads       在虚拟线程上计算哈希值, 此时 -n 指定同时处理的文件数上限 (需要 Java 21+)\n" +
+                   "    --incremental           创建和更新模式下在 <checksums file>.meta 中记录文件的大小和修改时间,\n" +
+                   "                            更新模式下跳过未修改的文件, 直接使用原有的哈希值\n" +
+                   "    --paranoid              与 --incremental 一起使用时, 重新计算所有文件的哈希值并重新记录元数据\n" +
+                   "    --cache                 在 ~/.cache/gchecksum 中缓存文件的哈希值, 各次运行共享缓存,\n" +
+                   "                            设备, inode, 大小和修改时间均未改变的文件不再重新读取\n" +
+                   "    --xattr                 在文件的扩展属性 user.gchecksum.<algorithm> 中记录哈希值, 大小和修改时间,\n" +
+                   "                            大小和修改时间未改变时直接使用记录的哈希值, 重命名或移动文件后仍然有效\n" +
+                   "    --size                  创建和更新模式下在校验文件中记录文件大小 (<hash> <size>  <file>),\n" +
+                   "                            校验模式下先检查文件大小, 大小不匹配时不再读取文件 (更新模式下保留已记录的大小)\n" +
+                   "    --stream                创建和更新模式下按顺序遍历目录并边计算边写入, 内存占用不随文件数量增长\n" +
+                   "    --debounce <seconds>    监视模式下最后一次变化后等待的秒数, 之后再计算变化文件的哈希值 (默认值为 2)\n" +
+                   "    --max-pending <num>     校验模式下等待处理的记录数上限, 达到上限时暂停读取校验文件 (默认值为线程数的 64 倍)\n" +
+                   "    --order <fifo|size|inode>\n" +
+                   "                            指定计算哈希值的顺序, size 表示先计算大文件, inode 表示按 inode 编号读取以减少机械硬盘寻道\n" +
+                   "                            (默认值为 fifo, 输出顺序不变, 不能与 --stream 混用)\n" +
+                   "    --io <read|mmap|auto>   指定读取文件的方式 (默认值为 read, auto 模式下仅对大文件使用内存映射)";
         } else {
             return "Usage:\n" +
                    "    gchecksum c(reate) [options]    : Create checksums file\n" +
                    "    gchecksum v(erify) [options]    : Verify files using checksums file\n" +
                    "    gchecksum u(pdate) [options]    : Update the existing checksums file and print the changes\n" +
+                   "    gchecksum w(atch) [options]     : Watch the directory and keep the checksums file up to date\n" +
                    "\n" +
                    "    gchecksum help                  : Print this help message\n" +
                    "    gchecksum version               : Print version informatio\n" +
@@ -85,10 +110,43 @@ public enum Lang {
                    "    -f <checksums file>     Specify the checksums file [default=checksums.txt]\n" +
                    "    -d <directory>          Specify the directory that will be validated [default=.] \n" +
                    "    -y --yes --assume-yes   Overwrite the existing checksums file silently\n" +
-                   "    -a --algorithm <algorithm>\n" +
+                   "    -a --algorithm <algorithm>[,<algorithm>...]\n" +
                    "                            Specify the hash algorithm to be used [default=SHA-256]\n" +
-                   "    -n --num-threads <num threads>\n" +
-                   "                            Specify the number of threads used for validation [default=4]";
+                   "                            In create/update mode, a comma-separated list reads each file once\n" +
+                   "                            and writes one checksums file per algorithm\n" +
+                   "    -n --num-threads <num threads|auto>\n" +
+                   "                            Specify the number of threads used for validation [default=auto]\n" +
+                   "                            auto chooses it from the storage device, the CPU cores and the algorithm,\n" +
+                   "                            separately for each device the tree spans through symbolic links\n" +
+                   "    --io-threads   <num threads>\n" +
+                   "    --hash-threads <num threads>\n" +
+                   "                            Specify the number of threads reading files and hashing them separately,\n" +
+                   "                            so reads and hashing overlap (the other one defaults to -n,\n" +
+                   "                            can't be mixed with --io mmap/auto)\n" +
+                   "    --virtual-threads       Hash files on virtual threads, -n limits the number of files in flight (Java 21+)\n" +
+                   "    --incremental           In create/update mode, record the size and times of the files in\n" +
+                   "                            <checksums file>.meta, in update mode reuse the old hashes of the files\n" +
+                   "                            that have not changed since then\n" +
+                   "    --paranoid              With --incremental, hash all files again and record their metadata\n" +
+                   "    --cache                 Cache the hashes in ~/.cache/gchecksum across runs, a file whose device,\n" +
+                   "                            inode, size and times have not changed is not read again\n" +
+                   "    --xattr                 Record the hashes with the size and mtime in the extended attributes\n" +
+                   "                            user.gchecksum.<algorithm> of the files, and trust them while the size and\n" +
+                   "                            mtime have not changed, also after the files are renamed or moved\n" +
+                   "    --size                  In create/update mode, record the sizes of the files (<hash> <size>  <file>),\n" +
+                   "                            verify mode rejects a file of another size without reading it\n" +
+                   "                            (update mode keeps recording sizes that are already recorded)\n" +
+                   "    --stream                In create/update mode, walk the tree in sorted order and write records\n" +
+                   "                            while hashing, the memory does not grow with the number of files\n" +
+                   "    --debounce <seconds>    In watch mode, hash the changed files when nothing has changed for\n" +
+                   "                            this many seconds [default=2]\n" +
+                   "    --max-pending <num>     In verify mode, the maximum number of records waiting to be verified,\n" +
+                   "                            reading the checksums file pauses when it is reached [default=64 * threads]\n" +
+                   "    --order <fifo|size|inode>\n" +
+                   "                            Specify the order in which files are hashed, size hashes the largest files first,\n" +
+                   "                            inode reads files by inode number to reduce seeks on hard disks\n" +
+                   "                            [default=fifo] (records are written in the same order, can't be mixed with --stream)\n" +
+                   "    --io <read|mmap|auto>   Specify how files are read, auto maps only large files into memory [default=read]";
         }
     }
 
@@ -193,11 +251,31 @@ public enum Lang {
         else return "error: can't mix options " + option1 + " and " + option2;
     }
 
+    public String getOptionRequiresMessage(String option, String required) {
+        if (this == CHINESE) return "错误: 选项 " + option + " 需要与 " + required + " 一起使用";
+        else return "error: option " + option + " requires " + required;
+    }
+
+    public String getVirtualThreadsNotSupportedMessage() {
+        if (this == CHINESE) return "错误: 虚拟线程需要 Java 21 或更高版本";
+        else return "error: virtual threads require Java 21 or later";
+    }
+
     public String getUnsupportedAlgorithmMessage(String algo) {
         if (this == CHINESE) return "错误: 不支持的哈希算法: " + algo;
         else return "error: unsupported hash algorithm: " + algo;
     }
 
+    public String getMultipleAlgorithmsVerifyMessage() {
+        if (this == CHINESE) return "错误: 校验模式不支持指定多个哈希算法";
+        else return "error: verify mode does not support multiple hash algorithms";
+    }
+
+    public String getMultipleAlgorithmsToStdoutMessage() {
+        if (this == CHINESE) return "错误: 指定多个哈希算法时不能将结果输出到标准输出流";
+        else return "error: the results of multiple hash algorithms cannot be written to the standard output";
+    }
+
     public String getInvalidOptionValueMessage(String option, String value) {
         if (this == CHINESE) return "错误: 选项 " + option + " 的参数值 " + value + " 无效";
         else return "error: invalid value " + value + "  for option " + option;
@@ -250,6 +328,12 @@ public enum Lang {
             return String.format("error: hash value of file '%s'(%s) does not match the value in the record(%s)", file, hash, oldHash);
     }
 
+    public String getFileSizeNotMatchMessage(Path file, long size, long recordSize) {
+        if (this == CHINESE) return String.format("错误: 文件 '%s' 的大小(%d) 不匹配记录(%d)", file, size, recordSize);
+        else
+            return String.format("error: size of file '%s'(%d) does not match the size in the record(%d)", file, size, recordSize);
+    }
+
     public String getInvalidOptionMessage(String option) {
         if (this == CHINESE) return "错误: 无效选项: " + option;
         else return "error: invalid option: " + option;
@@ -264,6 +348,11 @@ public enum Lang {
         else return "error: an error occurred while processing the file '" + file + "'";
     }
 
+    public String getCacheErrorMessage(Path directory) {
+        if (this == CHINESE) return "错误: 无法读写哈希缓存 " + directory + ", 将重新计算哈希值";
+        else return "error: cannot read or write the hash cache " + directory + ", the files will be hashed again";
+    }
+
     public String getReadWriteErrorMessage() {
         if (this == CHINESE) return "错误: 读写 checksums 文件时发生异常";
         else return "error: An exception occurred while reading/writing the checksums file";
@@ -308,6 +397,11 @@ public enum Lang {
             return String.format("change: The hash value of file '%s' (%s) will be updated to '%s'", file, hash, oldHash);
     }
 
+    public String getWatchingMessage(Path dir) {
+        if (this == CHINESE) return "正在监视 '" + dir + "', 按 Ctrl+C 退出";
+        else return "Watching '" + dir + "', press Ctrl+C to stop";
+    }
+
     public String getFileRecordBeRemoved(String file) {
         if (this == CHINESE) return "变化: 文件 '" + file + "' 的记录将被删除";
         else return "change: The record of file '" + file + "' will be deleted";
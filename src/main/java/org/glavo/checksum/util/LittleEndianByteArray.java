@@ -18,6 +18,7 @@ package org.glavo.checksum.util;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 
@@ -28,6 +29,9 @@ public final class LittleEndianByteArray {
     private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, LITTLE_ENDIAN);
     private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, LITTLE_ENDIAN);
 
+    private static final VarHandle BUFFER_INT = MethodHandles.byteBufferViewVarHandle(int[].class, LITTLE_ENDIAN);
+    private static final VarHandle BUFFER_LONG = MethodHandles.byteBufferViewVarHandle(long[].class, LITTLE_ENDIAN);
+
     public static byte getByte(byte[] array, int offset) {
         return array[offset];
     }
@@ -67,4 +71,14 @@ public final class LittleEndianByteArray {
     public static long getLong(byte[] array, long offset) {
         return getLong(array, (int) offset);
     }
+
+    // ByteBuffer, the offset is an absolute index and the byte order of the buffer is ignored
+
+    public static int getInt(ByteBuffer buffer, int offset) {
+        return (int) BUFFER_INT.get(buffer, offset);
+    }
+
+    public static long getLong(ByteBuffer buffer, int offset) {
+        return (long) BUFFER_LONG.get(buffer, offset);
+    }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * What is known about the storage of a directory, used to choose the number of threads.
+ */
+public final class StorageInfo {
+    public enum Kind {
+        /**
+         * Hard disk drive, concurrent reads cause seeks.
+         */
+        ROTATIONAL,
+
+        /**
+         * SSD, NVMe or memory, deep queues are served in parallel.
+         */
+        SOLID_STATE,
+
+        /**
+         * Network or FUSE file systems, each read has a high latency.
+         */
+        REMOTE,
+
+        UNKNOWN
+    }
+
+    /**
+     * The number of threads used when nothing is known about the storage.
+     */
+    public static final int DEFAULT_NUM_THREADS = 4;
+
+    private static final int MAX_NUM_THREADS = 64;
+    private static final int REMOTE_NUM_THREADS = 16;
+
+    private static final String[] REMOTE_TYPES = {
+            "nfs", "nfs4", "cifs", "smb3", "smbfs", "9p", "ceph", "glusterfs", "afs", "lustre", "gpfs", "beegfs", "davfs"
+    };
+
+    public static final StorageInfo UNKNOWN = new StorageInfo(Kind.UNKNOWN, null, 0);
+
+    private final Kind kind;
+    private final String device;
+    private final int queueDepth;
+
+    StorageInfo(Kind kind, String device, int queueDepth) {
+        this.kind = kind;
+        this.device = device;
+        this.queueDepth = queueDepth;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the name of the block device, such as {@code sda} or {@code nvme0n1}, or {@code null} if it is unknown.
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * Returns the number of requests the block device queues, or {@code 0} if it is unknown.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Inspects the storage of the path. Only the file system type is known on other systems than Linux.
+     */
+    public static StorageInfo of(Path path) {
+        final FileStore store;
+        try {
+            store = Files.getFileStore(path);
+        } catch (IOException e) {
+            return UNKNOWN;
+        }
+
+        if (isRemote(store.type())) {
+            return new StorageInfo(Kind.REMOTE, null, 0);
+        }
+        if ("tmpfs".equals(store.type()) || "ramfs".equals(store.type())) {
+            return new StorageInfo(Kind.SOLID_STATE, null, 0);
+        }
+
+        Path sysDir = null;
+        try {
+            // Block devices of the mounted file systems have a real device number, btrfs and overlayfs do not
+            final Object dev = Files.getAttribute(path, "unix:dev");
+            if (dev instanceof Long) {
+                final long d = (Long) dev;
+                if (major(d) != 0) {
+                    sysDir = Paths.get("/sys/dev/block/" + major(d) + ":" + minor(d));
+                }
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException ignored) {
+        }
+
+        if (sysDir == null || !Files.isDirectory(sysDir)) {
+            final String name = store.name();
+            if (!name.startsWith("/dev/")) {
+                return UNKNOWN;
+            }
+            try {
+                // Resolves /dev/mapper/* and /dev/disk/by-*/*
+                sysDir = Paths.get("/sys/class/block", Paths.get(name).toRealPath().getFileName().toString());
+            } catch (IOException | RuntimeException e) {
+                return UNKNOWN;
+            }
+        }
+
+        try {
+            sysDir = sysDir.toRealPath();
+            if (Files.exists(sysDir.resolve("partition"))) {
+                // The queue belongs to the whole disk
+                sysDir = sysDir.getParent();
+            }
+        } catch (IOException e) {
+            return UNKNOWN;
+        }
+
+        final String rotational = readLine(sysDir.resolve("queue").resolve("rotational"));
+        final Kind kind = "1".equals(rotational) ? Kind.ROTATIONAL
+                : "0".equals(rotational) ? Kind.SOLID_STATE
+                : Kind.UNKNOWN;
+
+        int queueDepth = 0;
+        final String nrRequests = readLine(sysDir.resolve("queue").resolve("nr_requests"));
+        if (nrRequests != null) {
+            try {
+                queueDepth = Math.max(0, Integer.parseInt(nrRequests));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        return new StorageInfo(kind, sysDir.getFileName().toString(), queueDepth);
+    }
+
+    static boolean isRemote(String type) {
+        final String t = type.toLowerCase(Locale.ROOT);
+        if (t.startsWith("fuse.") || t.equals("fuse")) {
+            return true;
+        }
+        for (String remoteType : REMOTE_TYPES) {
+            if (t.equals(remoteType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The encoding of dev_t used by glibc
+    static long major(long dev) {
+        return ((dev >>> 8) & 0xfffL) | ((dev >>> 32) & ~0xfffL);
+    }
+
+    static long minor(long dev) {
+        return (dev & 0xffL) | ((dev >>> 12) & ~0xffL);
+    }
+
+    private static String readLine(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim();
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Chooses the number of threads for hashing files on this storage.
+     *
+     * @param fastHash   {@code true} if hashing is faster than reading, see {@code Hasher.isFast()}
+     * @param processors the number of available processors
+     */
+    public int suggestNumThreads(boolean fastHash, int processors) {
+        final int n;
+        switch (kind) {
+            case ROTATIONAL:
+                // Reading several files at the same time makes the disk seek between them
+                return 1;
+            case REMOTE:
+                // The threads mostly wait for the network
+                return Math.min(MAX_NUM_THREADS, Math.max(REMOTE_NUM_THREADS, processors));
+            case SOLID_STATE:
+                // Keep the queue busy while cheap algorithms wait for the reads, use all cores for expensive ones
+                n = fastHash ? Math.max(DEFAULT_NUM_THREADS, processors * 2) : Math.max(2, processors);
+                break;
+            default:
+                return DEFAULT_NUM_THREADS;
+        }
+
+        return Math.min(MAX_NUM_THREADS, queueDepth > 0 ? Math.min(n, queueDepth) : n);
+    }
+
+    @Override
+    public String toString() {
+        return "StorageInfo[kind=" + kind + ", device=" + device + ", queueDepth=" + queueDepth + "]";
+    }
+}
@@ -112,4 +112,14 @@ public final class Utils {
 
         return new String(out, 0, 32, ISO_8859_1);
     }
+
+    /**
+     * Decodes the hex string {@code hex} into {@code out}, starting at {@code offset}.
+     */
+    public static void decodeHex(String hex, byte[] out, int offset) {
+        final int length = hex.length() >> 1;
+        for (int i = 0; i < length; i++) {
+            out[offset + i] = (byte) ((Character.digit(hex.charAt(i << 1), 16) << 4) | Character.digit(hex.charAt((i << 1) + 1), 16));
+        }
+    }
 }
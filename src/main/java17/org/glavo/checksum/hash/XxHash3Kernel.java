@@ -0,0 +1,65 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The XXH3 accumulate and scramble steps.
+ * <p>
+ * The Vector API implementation is used if the {@code jdk.incubator.vector} module has been added
+ * (e.g. {@code --add-modules jdk.incubator.vector}), the preferred vector shape has at least 4 long lanes,
+ * and it passes a self-check. Otherwise, it falls back to the scalar implementation.
+ * It can be disabled with {@code -Dorg.glavo.checksum.vector=false}.
+ */
+final class XxHash3Kernel {
+    private XxHash3Kernel() {
+    }
+
+    private static final boolean USE_VECTOR = isVectorAvailable();
+
+    private static boolean isVectorAvailable() {
+        if ("false".equalsIgnoreCase(System.getProperty("org.glavo.checksum.vector"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+
+        try {
+            return XxHash3VectorKernel.isSupported();
+        } catch (Throwable ignored) {
+            // The incubating API may be changed or removed in later Java versions
+            return false;
+        }
+    }
+
+    static void accumulate(long[] acc, ByteBuffer input, int offset, byte[] secret, int secretOffset, int nbStripes) {
+        if (USE_VECTOR) {
+            XxHash3VectorKernel.accumulate(acc, input, offset, secret, secretOffset, nbStripes);
+        } else {
+            XxHash3ScalarKernel.accumulate(acc, input, offset, secret, secretOffset, nbStripes);
+        }
+    }
+
+    static void scramble(long[] acc, byte[] secret) {
+        if (USE_VECTOR) {
+            XxHash3VectorKernel.scramble(acc, secret);
+        } else {
+            XxHash3ScalarKernel.scramble(acc, secret);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.hash;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static org.glavo.checksum.hash.XxHash3Hasher.*;
+
+/**
+ * XXH3 accumulate and scramble steps with the Vector API.
+ * <p>
+ * A stripe has 8 long lanes, so it is processed as 1 vector with AVX-512 or as 2 vectors with AVX2.
+ */
+final class XxHash3VectorKernel {
+    private XxHash3VectorKernel() {
+    }
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED.length() >= 8
+            ? LongVector.SPECIES_512
+            : LongVector.SPECIES_PREFERRED;
+
+    private static final int LANES = SPECIES.length();
+
+    // Swaps adjacent lanes
+    private static final VectorShuffle<Long> SWAP = VectorShuffle.fromOp(SPECIES, i -> i ^ 1);
+
+    static boolean isSupported() {
+        if (LANES < 4) {
+            return false;
+        }
+
+        // Compare with the scalar implementation
+        final byte[] data = new byte[STRIPE_LEN * nbStripesPerBlock + 7];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        final ByteBuffer input = ByteBuffer.wrap(data);
+
+        final long[] expected = {1, 2, 3, 4, 5, 6, 7, 8};
+        final long[] actual = expected.clone();
+
+        XxHash3ScalarKernel.accumulate(expected, input, 7, XXH3_kSecret, 0, nbStripesPerBlock);
+        XxHash3ScalarKernel.scramble(expected, XXH3_kSecret);
+        XxHash3ScalarKernel.accumulate(expected, input, 3, XXH3_kSecret, SECRET_LIMIT - 7, 1);
+
+        accumulate(actual, input, 7, XXH3_kSecret, 0, nbStripesPerBlock);
+        scramble(actual, XXH3_kSecret);
+        accumulate(actual, input, 3, XXH3_kSecret, SECRET_LIMIT - 7, 1);
+
+        return Arrays.equals(expected, actual);
+    }
+
+    // XXH3_accumulate
+    static void accumulate(final long[] acc, final ByteBuffer input, final int offset,
+                           final byte[] secret, final int secretOffset, final int nbStripes) {
+        for (int lane = 0; lane < 8; lane += LANES) {
+            LongVector accVector = LongVector.fromArray(SPECIES, acc, lane);
+
+            for (int s = 0; s < nbStripes; s++) {
+                // XXH3_accumulate_512
+                final LongVector data = LongVector.fromByteBuffer(SPECIES, input, offset + s * STRIPE_LEN + lane * 8, LITTLE_ENDIAN);
+                final LongVector key = LongVector.fromByteArray(SPECIES, secret, secretOffset + s * 8 + lane * 8, LITTLE_ENDIAN);
+                final LongVector dataKey = data.lanewise(VectorOperators.XOR, key);
+                final LongVector product = dataKey.and(0xFFFFFFFFL).mul(dataKey.lanewise(VectorOperators.LSHR, 32));
+                accVector = accVector.add(data.rearrange(SWAP)).add(product);
+            }
+
+            accVector.intoArray(acc, lane);
+        }
+    }
+
+    // XXH3_scrambleAcc
+    static void scramble(final long[] acc, final byte[] secret) {
+        for (int lane = 0; lane < 8; lane += LANES) {
+            LongVector accVector = LongVector.fromArray(SPECIES, acc, lane);
+            final LongVector key = LongVector.fromByteArray(SPECIES, secret, SECRET_LIMIT + lane * 8, LITTLE_ENDIAN);
+
+            accVector = accVector.lanewise(VectorOperators.XOR, accVector.lanewise(VectorOperators.LSHR, 47))
+                    .lanewise(VectorOperators.XOR, key)
+                    .mul(XXH_PRIME32_1);
+
+            accVector.intoArray(acc, lane);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2023 Glavo
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.glavo.checksum.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that runs each task in a new virtual thread, with at most {@code maxConcurrency} tasks
+     * in flight at the same time.
+     * <p>
+     * The hash contexts and their read buffers are pooled by the hashers, so they are shared by the virtual threads
+     * instead of being allocated for each of them.
+     */
+    public static ExecutorService newExecutor(int maxConcurrency) {
+        return new BoundedExecutor(
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("checksum-virtual-thread-", 1).factory()),
+                maxConcurrency);
+    }
+}
@@ -0,0 +1,166 @@
+package org.glavo.checksum.hash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashCacheTest {
+    private static final Hasher SHA_256 = Hasher.ofName("SHA-256");
+    private static final Hasher XXH3 = Hasher.ofName("XXH3");
+    private static final Hasher CRC32C = Hasher.ofName("CRC32C");
+
+    private static HashCache.Key key(int i) {
+        return new HashCache.Key(2049, 1000 + i, 4096, 1_000_000_000L * i, 1_000_000_000L * i + 1);
+    }
+
+    private static String hash(Hasher hasher, int i) {
+        char[] chars = new char[hasher.getDigestLength() * 2];
+        Arrays.fill(chars, Character.forDigit(i % 16, 16));
+        return new String(chars);
+    }
+
+    private static void put(HashCache cache, int i) {
+        cache.put(key(i), new Hasher[]{SHA_256}, new String[]{hash(SHA_256, i)});
+    }
+
+    private static boolean contains(HashCache cache, int i) {
+        String[] hashes = cache.get(key(i), new Hasher[]{SHA_256});
+        if (hashes == null) {
+            return false;
+        }
+        assertEquals(hash(SHA_256, i), hashes[0]);
+        return true;
+    }
+
+    @Test
+    public void testGetPut(@TempDir Path dir) throws IOException {
+        Hasher[] hashers = {SHA_256, XXH3};
+        String[] hashes = {hash(SHA_256, 1), hash(XXH3, 2)};
+
+        try (HashCache cache = new HashCache(dir, HashCache.DEFAULT_MAX_SIZE)) {
+            assertNull(cache.get(key(1), hashers));
+            cache.put(key(1), hashers, hashes);
+        }
+
+        try (HashCache cache = new HashCache(dir, HashCache.DEFAULT_MAX_SIZE)) {
+            assertArrayEquals(hashes, cache.get(key(1), hashers));
+            assertArrayEquals(new String[]{hashes[1]}, cache.get(key(1), new Hasher[]{XXH3}));
+            assertNull(cache.get(key(1), new Hasher[]{SHA_256, CRC32C}));
+            assertNull(cache.get(key(2), hashers));
+
+            HashCache.Key k = key(1);
+            assertNull(cache.get(new HashCache.Key(k.device, k.inode, k.size, k.mtime + 1, k.ctime), hashers));
+            assertNull(cache.get(new HashCache.Key(k.device, k.inode, k.size + 1, k.mtime, k.ctime), hashers));
+            assertNull(cache.get(new HashCache.Key(k.device + 1, k.inode, k.size, k.mtime, k.ctime), hashers));
+        }
+    }
+
+    @Test
+    public void testInvalidRecords(@TempDir Path dir) throws IOException {
+        try (HashCache cache = new HashCache(dir, HashCache.DEFAULT_MAX_SIZE)) {
+            put(cache, 0);
+            put(cache, 1);
+        }
+
+        Path log = dir.resolve(HashCache.LOG_FILE);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            // Corrupt the first record, and leave a torn record at the end
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xff}), 60);
+            channel.write(ByteBuffer.wrap(new byte[50]), channel.size());
+        }
+
+        try (HashCache cache = new HashCache(dir, HashCache.DEFAULT_MAX_SIZE)) {
+            assertFalse(contains(cache, 0));
+            assertTrue(contains(cache, 1));
+            put(cache, 2);
+        }
+        assertEquals(3L * HashCache.RECORD_SIZE, Files.size(log));
+
+        try (HashCache cache = new HashCache(dir, HashCache.DEFAULT_MAX_SIZE)) {
+            assertTrue(contains(cache, 1));
+            assertTrue(contains(cache, 2));
+        }
+    }
+
+    @Test
+    public void testCompact(@TempDir Path dir) throws IOException {
+        final long maxSize = 8 * HashCache.RECORD_SIZE;
+        Path log = dir.resolve(HashCache.LOG_FILE);
+
+        try (HashCache cache = new HashCache(dir, maxSize)) {
+            for (int i = 0; i < 20; i++) {
+                put(cache, i);
+            }
+        }
+        assertEquals(4L * HashCache.RECORD_SIZE, Files.size(log));
+
+        try (HashCache cache = new HashCache(dir, maxSize)) {
+            for (int i = 0; i < 16; i++) {
+                assertFalse(contains(cache, i));
+            }
+            for (int i = 16; i < 20; i++) {
+                assertTrue(contains(cache, i));
+            }
+            put(cache, 20);
+            put(cache, 21);
+        }
+        assertEquals(6L * HashCache.RECORD_SIZE, Files.size(log));
+
+        // The records 16 and 17 would be dropped by the next compaction, 16 is used again and kept
+        try (HashCache cache = new HashCache(dir, maxSize)) {
+            assertTrue(contains(cache, 16));
+        }
+        assertEquals(7L * HashCache.RECORD_SIZE, Files.size(log));
+
+        try (HashCache cache = new HashCache(dir, maxSize)) {
+            put(cache, 22);
+            put(cache, 23);
+        }
+        assertEquals(4L * HashCache.RECORD_SIZE, Files.size(log));
+
+        try (HashCache cache = new HashCache(dir, maxSize)) {
+            assertTrue(contains(cache, 16));
+            assertFalse(contains(cache, 17));
+            assertTrue(contains(cache, 22));
+            assertTrue(contains(cache, 23));
+        }
+    }
+
+    @Test
+    public void testHashFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("file");
+        Files.write(file, new byte[]{1, 2, 3});
+        Hasher[] hashers = {SHA_256, CRC32C};
+
+        Path cacheDir = dir.resolve("cache");
+        try (HashCache cache = new HashCache(cacheDir, HashCache.DEFAULT_MAX_SIZE)) {
+            assertArrayEquals(Hasher.hashFile(file, IOMode.READ, hashers), cache.hashFile(file, IOMode.READ, hashers));
+            assertArrayEquals(Hasher.hashFile(file, IOMode.READ, hashers),
+                    cache.hashFile(file, hashers, (f, h) -> {
+                        try {
+                            return CompletableFuture.completedFuture(Hasher.hashFile(f, IOMode.READ, h));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }).join());
+        }
+
+        HashCache.Key key = HashCache.keyOf(file);
+        if (key != null) {
+            // The file has just been written, so it may be changed again without changing its times
+            assertTrue(key.isRacy(key.ctime));
+            assertFalse(Files.exists(cacheDir.resolve(HashCache.LOG_FILE)));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.RandomUtils;
+import org.glavo.checksum.util.ByteBufferChannel;
+import org.glavo.checksum.util.Utils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashContextTest {
+
+    private static final int[] LENGTHS = {0, 1, 3, 16, 17, 128, 129, 240, 241, 1023, 1024, 1025, 100000};
+
+    @ParameterizedTest
+    @ValueSource(strings = {"MD5", "SHA-256", "CRC32", "CRC32C", "Adler32", "BLAKE3", "XXH64", "XXH3", "XXH128", "SHA256-TREE"})
+    public void testDigest(String algorithm) throws IOException {
+        Hasher hasher = Hasher.ofName(algorithm);
+        HashContext context = hasher.newContext();
+        byte[] digest = new byte[hasher.getDigestLength() + 2];
+
+        for (int length : LENGTHS) {
+            byte[] data = RandomUtils.getBytes(length, length);
+            String expected = hasher.hash(new ByteBufferChannel(data));
+
+            // single update, the context is reset by the digest
+            context.update(data);
+            assertEquals(expected, context.digestHex(), algorithm + " " + length);
+
+            // byte arrays of different sizes
+            for (int offset = 0; offset < length; ) {
+                int n = Math.min(length - offset, offset % 7 * 13 + 1);
+                context.update(data, offset, n);
+                offset += n;
+            }
+            context.digestInto(digest, 1);
+            assertEquals(expected, Utils.encodeHex(Arrays.copyOfRange(digest, 1, digest.length - 1)), algorithm + " " + length);
+
+            // direct buffers
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            buffer.put(data).flip();
+            context.update(buffer.slice().limit(length / 2));
+            buffer.position(length / 2);
+            context.update(buffer);
+            assertFalse(buffer.hasRemaining());
+
+            if (hasher.getDigestLength() <= Long.BYTES) {
+                long value = context.digestLong();
+                assertEquals(expected, Utils.encodeHex(value).substring(16 - hasher.getDigestLength() * 2));
+            } else {
+                assertThrows(UnsupportedOperationException.class, context::digestLong);
+                context.reset();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {TreeHasher.LEAF_SIZE, 2 * TreeHasher.LEAF_SIZE + 1})
+    public void testTreeLeaves(int length) throws IOException {
+        Hasher hasher = Hasher.ofName("XXH128-TREE");
+        byte[] data = RandomUtils.getBytes(length, length);
+
+        HashContext context = hasher.newContext();
+        for (int offset = 0; offset < length; offset += 1000000) {
+            context.update(data, offset, Math.min(1000000, length - offset));
+        }
+        assertEquals(hasher.hash(new ByteBufferChannel(data)), context.digestHex());
+    }
+
+    @Test
+    public void testTruncated(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("data.bin");
+        Files.write(file, RandomUtils.getBytes(0, 100));
+
+        HasherBase hasher = (HasherBase) Hasher.ofName("CRC32");
+        HasherBase.Context context = hasher.acquireContext();
+        try (FileChannel channel = FileChannel.open(file)) {
+            // The file is shorter than the range, e.g. it has been truncated while it is hashed
+            assertThrows(EOFException.class, () -> context.update(channel, 50, 100, false));
+        } finally {
+            hasher.releaseContext(context);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.RandomUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashPipelineTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    public void testPipeline(int threads, @TempDir Path dir) throws Exception {
+        Hasher[] hashers = {Hasher.ofName("SHA-256"), Hasher.ofName("XXH3"), Hasher.ofName("CRC32C")};
+
+        int[] sizes = {0, 1, 4096, 327679, 327680, 327681, 1000000, 3 * 1024 * 1024 + 5};
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) {
+            Path file = dir.resolve("file-" + i);
+            Files.write(file, RandomUtils.getBytes(i, sizes[i]));
+            files.add(file);
+        }
+
+        List<CompletableFuture<String[]>> results = new ArrayList<>();
+        CompletableFuture<String[]> missing;
+        try (HashPipeline pipeline = new HashPipeline(threads, 5 - threads)) {
+            for (Path file : files) {
+                results.add(pipeline.submit(file, hashers));
+            }
+            missing = pipeline.submit(dir.resolve("missing"), hashers);
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            assertArrayEquals(Hasher.hashFile(files.get(i), IOMode.READ, hashers), results.get(i).get());
+        }
+
+        ExecutionException exception = assertThrows(ExecutionException.class, missing::get);
+        assertInstanceOf(NoSuchFileException.class, exception.getCause());
+    }
+
+    @Test
+    public void testExecute(@TempDir Path dir) throws Exception {
+        Hasher[] hashers = {Hasher.ofName("SHA-256"), Hasher.ofName("BLAKE3")};
+
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path file = dir.resolve("file-" + i);
+            Files.write(file, RandomUtils.getBytes(i, i * 100000));
+            files.add(file);
+        }
+
+        List<CompletableFuture<String[]>> results = new ArrayList<>();
+        try (HashPipeline pipeline = new HashPipeline(2, 2)) {
+            for (int i = 0; i < files.size(); i += 5) {
+                List<Path> batch = files.subList(i, i + 5);
+                List<CompletableFuture<String[]>> batchResults = new ArrayList<>();
+                for (int j = 0; j < batch.size(); j++) {
+                    CompletableFuture<String[]> result = new CompletableFuture<>();
+                    batchResults.add(result);
+                    results.add(result);
+                }
+                pipeline.execute(() -> {
+                    for (int j = 0; j < batch.size(); j++) {
+                        // The file is read by this thread before the next one is submitted
+                        CompletableFuture<String[]> future = pipeline.submit(batch.get(j), hashers);
+                        CompletableFuture<String[]> result = batchResults.get(j);
+                        future.whenComplete((hashes, exception) -> {
+                            if (exception != null) {
+                                result.completeExceptionally(exception);
+                            } else {
+                                result.complete(hashes);
+                            }
+                        });
+                    }
+                });
+            }
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            assertArrayEquals(Hasher.hashFile(files.get(i), IOMode.READ, hashers), results.get(i).get());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.util.ChecksumThreadFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelRangesTest {
+
+    @Test
+    public void testIsParallel() throws Exception {
+        assertFalse(ParallelRanges.isParallel());
+        assertFalse(ForkJoinPool.commonPool().submit(ParallelRanges::isParallel).get());
+
+        ForkJoinPool otherPool = new ForkJoinPool(2);
+        ForkJoinPool checksumPool = ChecksumThreadFactory.newPool(2);
+        try {
+            assertFalse(otherPool.submit(ParallelRanges::isParallel).get());
+            assertTrue(checksumPool.submit(ParallelRanges::isParallel).get());
+        } finally {
+            otherPool.shutdown();
+            checksumPool.shutdown();
+        }
+    }
+}
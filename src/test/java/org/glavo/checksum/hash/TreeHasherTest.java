@@ -0,0 +1,99 @@
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.RandomUtils;
+import org.glavo.checksum.util.ByteBufferChannel;
+import org.glavo.checksum.util.ChecksumThreadFactory;
+import org.glavo.checksum.util.Utils;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TreeHasherTest {
+
+    private static Stream<Arguments> testArguments() {
+        return IntStream.of(0, 1, 4096, TreeHasher.LEAF_SIZE - 1, TreeHasher.LEAF_SIZE, TreeHasher.LEAF_SIZE + 1, 3 * TreeHasher.LEAF_SIZE + 17)
+                .boxed()
+                .flatMap(it -> Stream.of(Arguments.of("SHA-256", it), Arguments.of("CRC32", it)));
+    }
+
+    private static String expected(String algorithm, byte[] data) throws Exception {
+        final Hasher leafHasher = Hasher.ofName(algorithm);
+        final int digestLength = leafHasher.getDigestLength();
+        final int leafCount = Math.max(1, (data.length + TreeHasher.LEAF_SIZE - 1) / TreeHasher.LEAF_SIZE);
+
+        ByteBuffer root = ByteBuffer.allocate(leafCount * digestLength + 12);
+        for (int i = 0; i < leafCount; i++) {
+            int from = i * TreeHasher.LEAF_SIZE;
+            int to = Math.min(data.length, from + TreeHasher.LEAF_SIZE);
+            byte[] leaf = new byte[digestLength];
+            Utils.decodeHex(leafHasher.hash(new ByteBufferChannel(ByteBuffer.wrap(data, from, to - from).slice())), leaf, 0);
+            root.put(leaf);
+        }
+        root.putLong(data.length);
+        root.putInt(TreeHasher.LEAF_SIZE);
+        return leafHasher.hash(new ByteBufferChannel(root.array()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testArguments")
+    public void test(String algorithm, int length, @TempDir Path dir) throws Exception {
+        byte[] data = RandomUtils.getBytes(length, length);
+        Path file = dir.resolve("data.bin");
+        Files.write(file, data);
+
+        Hasher hasher = Hasher.ofName(algorithm + "-TREE");
+        String expected = expected(algorithm, data);
+
+        assertEquals(expected, hasher.hash(new ByteBufferChannel(data)));
+        assertEquals(expected, hasher.hashFile(file));
+        assertEquals(expected, hasher.hashFile(file, IOMode.MMAP));
+
+        ForkJoinPool pool = ChecksumThreadFactory.newPool(4);
+        try {
+            assertEquals(expected, pool.submit(() -> hasher.hashFile(file)).get());
+            assertEquals(expected, pool.submit(() -> hasher.hashFile(file, IOMode.MMAP)).get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("testArguments")
+    public void testPosition(String algorithm, int length, @TempDir Path dir) throws Exception {
+        byte[] data = RandomUtils.getBytes(length, length + 7);
+        Path file = dir.resolve("data.bin");
+        Files.write(file, data);
+
+        Hasher hasher = Hasher.ofName(algorithm + "-TREE");
+        String expected = expected(algorithm, Arrays.copyOfRange(data, 7, data.length));
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            channel.position(7);
+            assertEquals(expected, hasher.hash(channel));
+        }
+
+        ForkJoinPool pool = ChecksumThreadFactory.newPool(4);
+        try {
+            assertEquals(expected, pool.submit(() -> {
+                try (FileChannel channel = FileChannel.open(file)) {
+                    channel.position(7);
+                    return hasher.hash(channel);
+                }
+            }).get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.glavo.checksum.hash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class XattrHashesTest {
+    private static final Hasher SHA_256 = Hasher.ofName("SHA-256");
+    private static final Hasher CRC32 = Hasher.ofName("CRC32");
+
+    @Test
+    public void testParse() {
+        String hash = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+        String value = XattrHashes.format(1024, 1_000_000_001L, hash);
+        assertEquals("1024 1000000001 " + hash, value);
+
+        assertEquals(hash, XattrHashes.parse(value, 1024, 1_000_000_001L, SHA_256));
+        assertNull(XattrHashes.parse(value, 1025, 1_000_000_001L, SHA_256));
+        assertNull(XattrHashes.parse(value, 1024, 1_000_000_000L, SHA_256));
+        assertNull(XattrHashes.parse(value, 1024, 1_000_000_001L, CRC32));
+        assertNull(XattrHashes.parse("1024 1000000001 " + hash.replace('a', 'x'), 1024, 1_000_000_001L, SHA_256));
+        assertNull(XattrHashes.parse("1024 " + hash, 1024, 1_000_000_001L, SHA_256));
+        assertNull(XattrHashes.parse("", 1024, 1_000_000_001L, SHA_256));
+
+        assertEquals("gchecksum.sha-256", XattrHashes.nameOf(SHA_256));
+    }
+
+    @Test
+    public void testReadWrite(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("file");
+        Files.write(file, new byte[]{1, 2, 3});
+
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        try {
+            view.write("gchecksum.test", ByteBuffer.wrap("test".getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException | UnsupportedOperationException | NullPointerException e) {
+            return; // The file system does not support extended attributes
+        }
+
+        Hasher[] hashers = {SHA_256, CRC32};
+        String[] hashes = Hasher.hashFile(file, IOMode.READ, hashers);
+
+        assertNull(XattrHashes.read(file, hashers, 3, 100));
+        XattrHashes.write(file, hashers, hashes, 3, 100);
+        assertArrayEquals(hashes, XattrHashes.read(file, hashers, 3, 100));
+        assertArrayEquals(new String[]{hashes[1]}, XattrHashes.read(file, new Hasher[]{CRC32}, 3, 100));
+        assertNull(XattrHashes.read(file, hashers, 3, 101));
+        assertNull(XattrHashes.read(file, new Hasher[]{SHA_256, Hasher.ofName("MD5")}, 3, 100));
+
+        // The hashes follow the file when it is moved
+        Path moved = Files.move(file, dir.resolve("moved"));
+        assertArrayEquals(hashes, XattrHashes.read(moved, hashers, 3, 100));
+    }
+}
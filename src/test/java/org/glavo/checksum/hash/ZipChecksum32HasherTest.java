@@ -0,0 +1,76 @@
+package org.glavo.checksum.hash;
+
+import org.glavo.checksum.RandomUtils;
+import org.glavo.checksum.util.ByteBufferChannel;
+import org.glavo.checksum.util.ChecksumThreadFactory;
+import org.glavo.checksum.util.Utils;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ZipChecksum32HasherTest {
+
+    private static Stream<Arguments> algorithms() {
+        return Stream.of(
+                Arguments.of("CRC32", (Supplier<Checksum>) CRC32::new, ChecksumCombiner.CRC32),
+                Arguments.of("CRC32C", (Supplier<Checksum>) CRC32C::new, ChecksumCombiner.CRC32C),
+                Arguments.of("Adler32", (Supplier<Checksum>) Adler32::new, ChecksumCombiner.ADLER32)
+        );
+    }
+
+    private static int checksum(Supplier<Checksum> supplier, byte[] data, int offset, int length) {
+        Checksum checksum = supplier.get();
+        checksum.update(data, offset, length);
+        return (int) checksum.getValue();
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    public void testCombine(String name, Supplier<Checksum> supplier, ChecksumCombiner combiner) {
+        byte[] data = RandomUtils.getBytes(0, 100000);
+        int expected = checksum(supplier, data, 0, data.length);
+
+        for (int split : new int[]{0, 1, 2, 3, 15, 16, 17, 65521, 65522, 99999, 100000}) {
+            int value1 = checksum(supplier, data, 0, split);
+            int value2 = checksum(supplier, data, split, data.length - split);
+            assertEquals(expected, combiner.combine(value1, value2, data.length - split), name + " split at " + split);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    public void testParallel(String name, Supplier<Checksum> supplier, ChecksumCombiner combiner, @TempDir Path dir) throws Exception {
+        Hasher hasher = Hasher.ofName(name);
+        int rangeSize = (int) ZipChecksum32Hasher.RANGE_SIZE;
+
+        for (int length : new int[]{2 * rangeSize + 1, 3 * rangeSize, 5 * rangeSize + 1000}) {
+            byte[] data = RandomUtils.getBytes(length, length);
+            Path file = dir.resolve("data-" + length + ".bin");
+            Files.write(file, data);
+
+            String expected = hasher.hash(new ByteBufferChannel(data));
+            assertEquals(Utils.encodeHex(checksum(supplier, data, 0, length)), expected);
+
+            ForkJoinPool pool = ChecksumThreadFactory.newPool(4);
+            try {
+                assertEquals(expected, pool.submit(() -> hasher.hashFile(file)).get(), name);
+                assertEquals(expected, pool.submit(() -> hasher.hashFile(file, IOMode.MMAP)).get(), name);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+}
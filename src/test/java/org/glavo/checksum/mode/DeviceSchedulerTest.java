@@ -0,0 +1,78 @@
+package org.glavo.checksum.mode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeviceSchedulerTest {
+
+    @Test
+    public void testDeviceOf(@TempDir Path dir) throws IOException {
+        Path file = Files.write(dir.resolve("file"), new byte[0]);
+        Path missing = dir.resolve("missing");
+
+        assertEquals(DeviceScheduler.deviceOf(dir), DeviceScheduler.deviceOf(file));
+        assertNotEquals(DeviceScheduler.deviceOf(file), DeviceScheduler.deviceOf(missing));
+        assertSame(DeviceScheduler.deviceOf(missing), DeviceScheduler.deviceOf(dir.resolve("missing2")));
+    }
+
+    @Test
+    public void testSubmit(@TempDir Path dir) throws IOException, InterruptedException, ExecutionException {
+        AtomicInteger pools = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        DeviceScheduler scheduler = new DeviceScheduler(file -> {
+            pools.incrementAndGet();
+            return 2;
+        });
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Path file = Files.write(dir.resolve("f" + i), new byte[i]);
+            int value = i;
+            futures.add(scheduler.submit(file, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return value;
+            }));
+        }
+        futures.add(scheduler.submit(dir.resolve("missing"), () -> -1));
+
+        for (int i = 0; i < 16; i++) {
+            assertEquals(i, (int) futures.get(i).get());
+        }
+        assertEquals(-1, (int) futures.get(16).get());
+
+        scheduler.shutdown();
+        scheduler.awaitTermination();
+
+        // The device of the missing file is unknown, so it is hashed in the pool of the unknown device
+        assertEquals(2, pools.get());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+    @Test
+    public void testSubmitFromPool(@TempDir Path dir) throws Exception {
+        Path file = Files.write(dir.resolve("file"), new byte[0]);
+        DeviceScheduler scheduler = new DeviceScheduler(f -> 2);
+
+        // A task of the pool of the device runs the submitted task itself
+        assertNotSame(Thread.currentThread(), scheduler.submit(file, Thread::currentThread).get());
+        assertTrue(scheduler.poolOf(dir).submit(() -> scheduler.submit(file, Thread::currentThread).get() == Thread.currentThread()).get());
+
+        scheduler.shutdown();
+        scheduler.awaitTermination();
+    }
+}
@@ -0,0 +1,59 @@
+package org.glavo.checksum.mode;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileMetadataTest {
+
+    @Test
+    public void testReadWrite() throws IOException {
+        StringWriter writer = new StringWriter();
+        FileMetadata.writeHeader(writer, 123456789L);
+        new FileMetadata(0, 1, 2).write(writer, "a");
+        new FileMetadata(1024, 3, FileMetadata.UNKNOWN_TIME).write(writer, "dir/file with spaces");
+
+        Map<String, FileMetadata> result = new HashMap<>();
+        assertEquals(123456789L, FileMetadata.read(new BufferedReader(new StringReader(writer + "invalid line\n")), result));
+        assertEquals(2, result.size());
+
+        FileMetadata a = result.get("a");
+        assertEquals(0, a.size);
+        assertEquals(1, a.mtime);
+        assertEquals(2, a.ctime);
+
+        FileMetadata b = result.get("dir/file with spaces");
+        assertEquals(1024, b.size);
+        assertEquals(3, b.mtime);
+        assertEquals(FileMetadata.UNKNOWN_TIME, b.ctime);
+
+        assertEquals(-1L, FileMetadata.read(new BufferedReader(new StringReader("0 1 2 a\n")), new HashMap<>()));
+    }
+
+    @Test
+    public void testUnchanged() {
+        long recordTime = TimeUnit.SECONDS.toNanos(1000);
+        long old = recordTime - TimeUnit.SECONDS.toNanos(10);
+        long racy = recordTime - TimeUnit.SECONDS.toNanos(1);
+
+        FileMetadata metadata = new FileMetadata(100, old, old);
+        assertTrue(metadata.isUnchanged(new FileMetadata(100, old, old), recordTime));
+        assertFalse(metadata.isUnchanged(new FileMetadata(101, old, old), recordTime));
+        assertFalse(metadata.isUnchanged(new FileMetadata(100, old + 1, old), recordTime));
+        assertFalse(metadata.isUnchanged(new FileMetadata(100, old, old + 1), recordTime));
+
+        FileMetadata racyMetadata = new FileMetadata(100, racy, racy);
+        assertFalse(racyMetadata.isUnchanged(new FileMetadata(100, racy, racy), recordTime));
+
+        FileMetadata noCtime = new FileMetadata(100, old, FileMetadata.UNKNOWN_TIME);
+        assertTrue(noCtime.isUnchanged(new FileMetadata(100, old, FileMetadata.UNKNOWN_TIME), recordTime));
+    }
+}
@@ -0,0 +1,90 @@
+package org.glavo.checksum.mode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileOrderSchedulerTest {
+
+    @Test
+    public void testOrder() throws Exception {
+        final long[] sizes = {3, 100, 0, 42, 100, 7};
+
+        FileOrderScheduler scheduler = new FileOrderScheduler(FileOrder.SIZE);
+        List<Long> started = new ArrayList<>();
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (long size : sizes) {
+            futures.add(scheduler.add(size, () -> {
+                started.add(size);
+                return FileOrderScheduler.submit(Runnable::run, () -> size * 2);
+            }));
+        }
+
+        assertTrue(started.isEmpty());
+        scheduler.dispatch();
+
+        assertEquals(Arrays.asList(100L, 100L, 42L, 7L, 3L, 0L), started);
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(sizes[i] * 2, (long) futures.get(i).get());
+        }
+    }
+
+    @Test
+    public void testInodeOrder() {
+        final long[] inodes = {30, 0, 10, 20, 0};
+
+        FileOrderScheduler scheduler = new FileOrderScheduler(FileOrder.INODE);
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < inodes.length; i++) {
+            int index = i;
+            scheduler.add(inodes[i], () -> {
+                started.add(index);
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+        scheduler.dispatch();
+
+        // The files without inode number keep their order
+        assertEquals(Arrays.asList(1, 4, 2, 3, 0), started);
+    }
+
+    @Test
+    public void testInodeOf(@TempDir Path dir) throws IOException {
+        Path a = Files.createFile(dir.resolve("a"));
+        Path b = Files.createFile(dir.resolve("b"));
+        if (dir.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            assertEquals(Files.getAttribute(a, "unix:ino"), FileOrder.inodeOf(a));
+            assertNotEquals(FileOrder.inodeOf(a), FileOrder.inodeOf(b));
+        } else {
+            assertEquals(0L, FileOrder.inodeOf(a));
+        }
+        assertEquals(0L, FileOrder.inodeOf(dir.resolve("missing")));
+    }
+
+    @Test
+    public void testException() {
+        FileOrderScheduler scheduler = new FileOrderScheduler(FileOrder.SIZE);
+        CompletableFuture<String> failed = scheduler.add(1, () -> FileOrderScheduler.submit(Runnable::run, () -> {
+            throw new IOException("test");
+        }));
+        CompletableFuture<String> thrown = scheduler.add(2, () -> {
+            throw new IllegalStateException("test");
+        });
+        scheduler.dispatch();
+
+        ExecutionException e1 = assertThrows(ExecutionException.class, failed::get);
+        assertInstanceOf(IOException.class, e1.getCause());
+        ExecutionException e2 = assertThrows(ExecutionException.class, thrown::get);
+        assertInstanceOf(IllegalStateException.class, e2.getCause());
+    }
+}
@@ -0,0 +1,56 @@
+package org.glavo.checksum.mode;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderedReporterTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 16, 100})
+    public void testOrder(int capacity) throws InterruptedException {
+        final int count = 10000;
+
+        Semaphore pending = new Semaphore(capacity);
+        List<Integer> reported = new ArrayList<>();
+        OrderedReporter<Integer> reporter = new OrderedReporter<>(capacity, value -> {
+            reported.add(value);
+            pending.release();
+        });
+
+        Random random = new Random(capacity);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < count; i++) {
+                pending.acquireUninterruptibly();
+                long sequence = reporter.next();
+                int value = i;
+                int delay = random.nextInt(50);
+                pool.execute(() -> {
+                    for (int j = 0; j < delay; j++) {
+                        Thread.yield();
+                    }
+                    reporter.publish(sequence, value);
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertTrue(reporter.isDrained());
+        assertEquals(count, reported.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) reported.get(i));
+        }
+    }
+}
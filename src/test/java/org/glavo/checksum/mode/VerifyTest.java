@@ -0,0 +1,114 @@
+package org.glavo.checksum.mode;
+
+import org.glavo.checksum.Exit;
+import org.glavo.checksum.Options;
+import org.glavo.checksum.RandomUtils;
+import org.glavo.checksum.hash.Hasher;
+import org.glavo.checksum.hash.IOMode;
+import org.glavo.checksum.util.Lang;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerifyTest {
+    private static final int RECORDS = 200;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "-n 1",
+            "-n 4",
+            "-n 4 --max-pending 1",
+            "-n 4 --max-pending 2",
+            "-n 3 --max-pending 7",
+            "-n 2 --max-pending 1000",
+            "--max-pending 1",
+            "",
+            "--io-threads 2 --hash-threads 2 --max-pending 1",
+            "--io-threads 1 --hash-threads 3",
+            "-n 4 --order size"
+    })
+    public void testVerify(String args, @TempDir Path dir) throws IOException, Exit {
+        final Lang lang = Lang.getInstance();
+        final Hasher hasher = Hasher.getDefault();
+
+        StringBuilder checksums = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < RECORDS; i++) {
+            String name = "d" + (i % 3) + "/f" + i;
+            Path file = dir.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, RandomUtils.getBytes(i, i * 37 % 5000));
+
+            String hash = hasher.hashFile(file, IOMode.READ);
+            long size = Files.size(file);
+            switch (i % 10) {
+                case 3: {
+                    String wrongHash = hasher.hashFile(dir.resolve("d0/f0"), IOMode.READ);
+                    checksums.append(wrongHash).append("  ").append(name);
+                    expected.add(lang.getHashNotMatchMessage(file, hash, wrongHash));
+                    break;
+                }
+                case 5:
+                    checksums.append(hash).append("  ").append(name).append(".missing");
+                    expected.add(lang.getFileNotExistMessage(dir.resolve(name + ".missing")));
+                    break;
+                case 7:
+                    // The hash matches, but the size does not
+                    checksums.append(hash).append(' ').append(size + 1).append("  ").append(name);
+                    expected.add(lang.getFileSizeNotMatchMessage(file, size, size + 1));
+                    break;
+                case 8:
+                    checksums.append(hash).append(' ').append(size).append("  ").append(name);
+                    break;
+                default:
+                    checksums.append(hash).append("  ").append(name);
+                    break;
+            }
+            checksums.append('\n');
+        }
+
+        List<String> list = new ArrayList<>(Arrays.asList("-d", dir.toString()));
+        for (String arg : args.split(" ")) {
+            if (!arg.isEmpty()) {
+                list.add(arg);
+            }
+        }
+        Options options = new Options(list.iterator());
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long[] counters;
+        System.setErr(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            counters = Verify.verify(options, new BufferedReader(new StringReader(checksums.toString())), null);
+        } finally {
+            System.setErr(err);
+        }
+
+        assertEquals(RECORDS / 10 * 7L, counters[0], args);
+        assertEquals(RECORDS / 10 * 3L, counters[1], args);
+
+        // The failures are reported in the order of the checksums file, whichever thread verifies them
+        String errorPrefix = expected.get(0).substring(0, expected.get(0).indexOf(' '));
+        List<String> reported = output.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> line.replaceAll("\u001b\\[\\d+m", ""))
+                .filter(line -> line.startsWith(errorPrefix))
+                .collect(Collectors.toList());
+        assertEquals(expected, reported, args);
+    }
+}
@@ -0,0 +1,188 @@
+package org.glavo.checksum.mode;
+
+import org.glavo.checksum.Exit;
+import org.glavo.checksum.Options;
+import org.glavo.checksum.hash.Hasher;
+import org.glavo.checksum.hash.IOMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WatchTest {
+
+    private static String record(Path dir, String path) throws IOException {
+        return Hasher.getDefault().hashFile(dir.resolve(path), IOMode.READ) + "  " + path;
+    }
+
+    private static String recordWithSize(Path dir, String path) throws IOException {
+        final Path file = dir.resolve(path);
+        return Hasher.getDefault().hashFile(file, IOMode.READ) + " " + Files.size(file) + "  " + path;
+    }
+
+    private static Options options(Path dir, Path checksumsFile, String... args) throws Exit {
+        List<String> list = new ArrayList<>(Arrays.asList("-d", dir.toString(), "-f", checksumsFile.toString(), "-n", "1", "-y"));
+        list.addAll(Arrays.asList(args));
+        Options options = new Options(list.iterator());
+        options.algorithm = Hasher.getDefault();
+        options.algorithms = new Hasher[]{options.algorithm};
+        return options;
+    }
+
+    /**
+     * Writes the file with an old modification time.
+     */
+    private static void writeOld(Path file, byte[] content) throws IOException {
+        Files.write(file, content);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+    }
+
+    /**
+     * The status change time cannot be set, so wait until the files written before are out of the racy margin.
+     */
+    private static void waitRacyMargin() throws InterruptedException {
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(FileMetadata.RACY_MARGIN) + 100);
+    }
+
+    /**
+     * Loads the records of the checksums file like the watch mode does on start.
+     */
+    private static Watch load(Options options, Path checksumsFile, WatchService watchService) throws IOException, Exit {
+        Map<String, String> old = new HashMap<>();
+        boolean recordSizes = CreateOrUpdate.prepare(options, checksumsFile, options.algorithm, true, old) || options.size;
+        Watch watch = new Watch(options, new Path[]{checksumsFile}, recordSizes, null, watchService);
+        watch.load(Collections.singletonList(old));
+        return watch;
+    }
+
+    @Test
+    public void testProcess(@TempDir Path dir) throws IOException, Exit, InterruptedException {
+        Files.createDirectories(dir.resolve("a/b"));
+        writeOld(dir.resolve("a/one"), new byte[]{1});
+        writeOld(dir.resolve("a/b/two"), new byte[]{2});
+        waitRacyMargin();
+
+        Path checksumsFile = dir.resolve("checksums.txt");
+        Options options = options(dir, checksumsFile);
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = new Watch(options, new Path[]{checksumsFile}, false, null, watchService)) {
+            watch.load(Collections.singletonList(new HashMap<>()));
+
+            assertTrue(watch.process());
+            assertEquals(2, watch.hashedFiles);
+            watch.write();
+            assertEquals(Arrays.asList(record(dir, "a/one"), record(dir, "a/b/two")), Files.readAllLines(checksumsFile));
+
+            // Unchanged files are not hashed again
+            watch.addPending(dir.resolve("a/one"));
+            assertFalse(watch.process());
+            assertEquals(0, watch.hashedFiles);
+
+            Files.write(dir.resolve("a/one"), new byte[]{1, 1});
+            Files.write(dir.resolve("a/three"), new byte[]{3});
+            Files.createDirectories(dir.resolve("c"));
+            Files.write(dir.resolve("c/four"), new byte[]{4});
+            Files.delete(dir.resolve("a/b/two"));
+            Files.delete(dir.resolve("a/b"));
+            watch.addPending(dir.resolve("a/one"));
+            watch.addPending(dir.resolve("a/three"));
+            watch.addPending(dir.resolve("c"));
+            watch.addPending(dir.resolve("a/b"));
+
+            assertTrue(watch.process());
+            assertEquals(3, watch.hashedFiles);
+            watch.write();
+            assertEquals(Arrays.asList(record(dir, "a/one"), record(dir, "a/three"), record(dir, "c/four")),
+                    Files.readAllLines(checksumsFile));
+            assertFalse(Files.exists(dir.resolve("checksums.txt.tmp")));
+        }
+    }
+
+    @Test
+    public void testIncremental(@TempDir Path dir) throws IOException, Exit, InterruptedException {
+        Files.createDirectories(dir.resolve("a"));
+        writeOld(dir.resolve("a/one"), new byte[]{1});
+        writeOld(dir.resolve("two"), new byte[]{2});
+        waitRacyMargin();
+
+        Path checksumsFile = dir.resolve("checksums.txt");
+        // The metadata is recorded even without --incremental
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = load(options(dir, checksumsFile), checksumsFile, watchService)) {
+            assertTrue(watch.process());
+            assertEquals(2, watch.hashedFiles);
+            watch.write();
+            assertTrue(Files.isRegularFile(FileMetadata.sidecarOf(checksumsFile)));
+        }
+
+        assertEquals(Arrays.asList(record(dir, "two"), record(dir, "a/one")), Files.readAllLines(checksumsFile));
+
+        // A restarted watch only hashes the files that have changed while it was stopped
+        writeOld(dir.resolve("two"), new byte[]{2, 2});
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = load(options(dir, checksumsFile, "--incremental"), checksumsFile, watchService)) {
+            assertTrue(watch.process());
+            assertEquals(1, watch.hashedFiles);
+            watch.write();
+            assertEquals(Arrays.asList(record(dir, "two"), record(dir, "a/one")), Files.readAllLines(checksumsFile));
+        }
+
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = load(options(dir, checksumsFile, "--incremental", "--paranoid"), checksumsFile, watchService)) {
+            assertTrue(watch.process());
+            assertEquals(2, watch.hashedFiles);
+        }
+    }
+
+    @Test
+    public void testSize(@TempDir Path dir) throws IOException, Exit {
+        Files.write(dir.resolve("one"), new byte[]{1});
+        Files.write(dir.resolve("two"), new byte[]{2, 2});
+
+        Path checksumsFile = dir.resolve("checksums.txt");
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = load(options(dir, checksumsFile, "--size"), checksumsFile, watchService)) {
+            assertTrue(watch.process());
+            watch.write();
+            assertEquals(Arrays.asList(recordWithSize(dir, "one"), recordWithSize(dir, "two")), Files.readAllLines(checksumsFile));
+
+            Files.write(dir.resolve("one"), new byte[]{1, 1, 1});
+            watch.addPending(dir.resolve("one"));
+            assertTrue(watch.process());
+            watch.write();
+            assertEquals(Arrays.asList(recordWithSize(dir, "one"), recordWithSize(dir, "two")), Files.readAllLines(checksumsFile));
+        }
+
+        // The sizes are kept without --size once they are recorded
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = load(options(dir, checksumsFile), checksumsFile, watchService)) {
+            watch.process();
+            watch.write();
+            assertEquals(Arrays.asList(recordWithSize(dir, "one"), recordWithSize(dir, "two")), Files.readAllLines(checksumsFile));
+        }
+    }
+
+    @Test
+    public void testPipeline(@TempDir Path dir) throws IOException, Exit {
+        Files.createDirectories(dir.resolve("a"));
+        Files.write(dir.resolve("a/one"), new byte[]{1});
+        Files.write(dir.resolve("two"), new byte[]{2, 2});
+
+        Path checksumsFile = dir.resolve("checksums.txt");
+        try (WatchService watchService = dir.getFileSystem().newWatchService();
+             Watch watch = load(options(dir, checksumsFile, "--io-threads", "1", "--hash-threads", "2"), checksumsFile, watchService)) {
+            assertTrue(watch.process());
+            assertEquals(2, watch.hashedFiles);
+            watch.write();
+            assertEquals(Arrays.asList(record(dir, "two"), record(dir, "a/one")), Files.readAllLines(checksumsFile));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.glavo.checksum.path;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParallelFileWalkerTest {
+
+    static List<String> walkFileTree(Path root, Set<Path> excludes) throws IOException {
+        TreeMap<String[], Path> result = new TreeMap<>(ArrayPathComparator.INSTANCE);
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!excludes.contains(file)) {
+                    Path relative = root.relativize(file);
+                    String[] path = new String[relative.getNameCount()];
+                    for (int i = 0; i < path.length; i++) {
+                        path[i] = relative.getName(i).toString();
+                    }
+                    result.put(path, file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<String> list = new ArrayList<>();
+        result.forEach((path, file) -> list.add(String.join("/", path) + " " + file));
+        return list;
+    }
+
+    static void createTree(Path root, long seed) throws IOException {
+        Random random = new Random(seed);
+        for (int i = 0; i < 200; i++) {
+            Path dir = root;
+            int depth = random.nextInt(5);
+            for (int j = 0; j < depth; j++) {
+                dir = dir.resolve("d" + random.nextInt(3));
+            }
+            Files.createDirectories(dir);
+            Files.write(dir.resolve("f" + random.nextInt(20)), new byte[0]);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 8})
+    public void testOrder(int numThreads, @TempDir Path root) throws IOException {
+        createTree(root, numThreads);
+
+        Set<Path> excludes = Collections.singleton(root.resolve("f0"));
+
+        ParallelFileWalker<Path> walker = new ParallelFileWalker<>(excludes) {
+            @Override
+            protected Path submit(String[] path, Path file, BasicFileAttributes attrs) {
+                assertEquals(file.getFileName().toString(), path[path.length - 1]);
+                return file;
+            }
+        };
+        walker.walk(root, numThreads);
+
+        List<String> actual = new ArrayList<>();
+        walker.result.forEach((path, file) -> actual.add(String.join("/", path) + " " + file));
+
+        assertEquals(walkFileTree(root, excludes), actual);
+    }
+}
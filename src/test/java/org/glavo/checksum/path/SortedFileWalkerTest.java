@@ -0,0 +1,36 @@
+package org.glavo.checksum.path;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SortedFileWalkerTest {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 2})
+    public void testOrder(long seed, @TempDir Path root) throws IOException {
+        ParallelFileWalkerTest.createTree(root, seed);
+
+        Set<Path> excludes = Collections.singleton(root.resolve("f0"));
+
+        List<String> actual = new ArrayList<>();
+        new SortedFileWalker(excludes) {
+            @Override
+            protected void visitFile(String[] path, Path file, BasicFileAttributes attrs) {
+                actual.add(String.join("/", path) + " " + file);
+            }
+        }.walk(root);
+
+        assertEquals(ParallelFileWalkerTest.walkFileTree(root, excludes), actual);
+    }
+}
@@ -0,0 +1,40 @@
+package org.glavo.checksum.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashRecordTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(new HashRecord("abcd", "dir/file"), HashRecord.of("abcd  dir/file"));
+        assertEquals(new HashRecord("abcd", 1024, "dir/file"), HashRecord.of("abcd 1024  dir/file"));
+        assertEquals(new HashRecord("abcd", 0, "file"), HashRecord.of("abcd 0  file"));
+
+        // Without a size, the numbers belong to the file name
+        assertEquals(new HashRecord("abcd", "1024  file"), HashRecord.of("abcd  1024  file"));
+        assertEquals(new HashRecord("abcd", "1024"), HashRecord.of("abcd 1024"));
+        assertEquals(new HashRecord("abcd", "1024 "), HashRecord.of("abcd 1024 "));
+        assertEquals(new HashRecord("abcd", "12a  file"), HashRecord.of("abcd 12a  file"));
+        assertEquals(new HashRecord("abcd", "2024 report.pdf"), HashRecord.of("abcd 2024 report.pdf"));
+        assertEquals(new HashRecord("abcd", "2024   report.pdf"), HashRecord.of("abcd 2024   report.pdf"));
+        assertEquals(new HashRecord("abcd", 1024, "2024 report.pdf"), HashRecord.of("abcd 1024  2024 report.pdf"));
+
+        assertNull(HashRecord.of("abcd"));
+        assertNull(HashRecord.of("abcd "));
+    }
+
+    @Test
+    public void testToString() {
+        for (HashRecord record : new HashRecord[]{
+                new HashRecord("abcd", "dir/file"),
+                new HashRecord("abcd", 1024, "dir/file"),
+                new HashRecord("abcd", 0, "1024  file"),
+                new HashRecord("abcd", "2024 report.pdf")
+        }) {
+            assertEquals(record, HashRecord.of(record.toString()));
+        }
+        assertEquals("abcd 1024  file", new HashRecord("abcd", 1024, "file").toString());
+    }
+}
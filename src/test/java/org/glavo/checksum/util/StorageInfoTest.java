@@ -0,0 +1,60 @@
+package org.glavo.checksum.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageInfoTest {
+
+    @Test
+    public void testDeviceNumber() {
+        // makedev(8, 1)
+        assertEquals(8, StorageInfo.major(0x801L));
+        assertEquals(1, StorageInfo.minor(0x801L));
+        // makedev(259, 300)
+        long dev = ((259L & 0xfffL) << 8) | ((259L & ~0xfffL) << 32) | (300L & 0xffL) | ((300L & ~0xffL) << 12);
+        assertEquals(259, StorageInfo.major(dev));
+        assertEquals(300, StorageInfo.minor(dev));
+    }
+
+    @Test
+    public void testRemote() {
+        assertTrue(StorageInfo.isRemote("nfs4"));
+        assertTrue(StorageInfo.isRemote("fuse.sshfs"));
+        assertTrue(StorageInfo.isRemote("CIFS"));
+        assertFalse(StorageInfo.isRemote("ext4"));
+        assertFalse(StorageInfo.isRemote("fuseblk"));
+    }
+
+    @Test
+    public void testSuggestNumThreads() {
+        StorageInfo hdd = new StorageInfo(StorageInfo.Kind.ROTATIONAL, "sda", 64);
+        assertEquals(1, hdd.suggestNumThreads(true, 16));
+        assertEquals(1, hdd.suggestNumThreads(false, 16));
+
+        StorageInfo nvme = new StorageInfo(StorageInfo.Kind.SOLID_STATE, "nvme0n1", 1023);
+        assertEquals(16, nvme.suggestNumThreads(false, 16));
+        assertEquals(32, nvme.suggestNumThreads(true, 16));
+        assertEquals(64, nvme.suggestNumThreads(true, 128));
+        assertEquals(2, nvme.suggestNumThreads(false, 1));
+
+        StorageInfo shallow = new StorageInfo(StorageInfo.Kind.SOLID_STATE, "sdb", 8);
+        assertEquals(8, shallow.suggestNumThreads(true, 16));
+
+        StorageInfo remote = new StorageInfo(StorageInfo.Kind.REMOTE, null, 0);
+        assertEquals(16, remote.suggestNumThreads(false, 4));
+
+        assertEquals(StorageInfo.DEFAULT_NUM_THREADS, StorageInfo.UNKNOWN.suggestNumThreads(false, 32));
+    }
+
+    @Test
+    public void testOf(@TempDir Path dir) {
+        StorageInfo info = StorageInfo.of(dir);
+        assertNotNull(info);
+        int n = info.suggestNumThreads(false, Runtime.getRuntime().availableProcessors());
+        assertTrue(n >= 1 && n <= 64);
+    }
+}